@@ -8,12 +8,22 @@ import java.util.Calendar;
 public class AnnotatedFrontier extends Frontier {
     /* Computation parameters */
     int maxDepth;
+    /** The size of the largest sets whose frontiers went into this
+	one. This is smaller than maxDepth if an anytime build has run
+	out of time. */
+    int effectiveDepth;
+    /** The area added by the last layer that an anytime build has
+	completed; 0 for a complete build. Since layers usually add less
+	and less area, this serves as a rough estimate (not a bound) of
+	the area that the frontier is missing. */
+    double lastLayerGain = 0;
     /* Computation timing */
     Calendar startTime, endTime; 
     public AnnotatedFrontier(PolicySignature[] p, FrontierContext _context, int _maxDepth,
 		      Calendar _startTime, Calendar _endTime) {
 	super(p, _context);
 	maxDepth = _maxDepth;
+	effectiveDepth = _maxDepth;
 	startTime = _startTime;
 	endTime = _endTime;	
     }
@@ -25,6 +35,7 @@ public class AnnotatedFrontier extends Frontier {
 
     public AnnotatedFrontier(FrontierInfo f, int _maxDepth,  Calendar _startTime) {
 	this(f.getPolicies(), f.context, _maxDepth, _startTime, Calendar.getInstance());
+	capGap = f.capGap;
     }
 
     /** Returns the recorded time when the frontier computation started */
@@ -34,6 +45,26 @@ public class AnnotatedFrontier extends Frontier {
     /** Returns the recorded value of maxDepth used in the
      * construction of this frontier */
     public double getMaxDepth() { return maxDepth; }
+    /** Returns the size of the largest sets of sensors whose frontiers
+	have actually been computed. This is the same as {@link
+	#getMaxDepth()}, unless the frontier has been built by {@link
+	Frontier#buildFrontierByDeadline(Test[], FrontierContext, int,
+	long) an anytime build} that has run out of time. */
+    public int getEffectiveDepth() { return effectiveDepth; }
+    /** Returns the area added by the last completed layer of an
+	anytime build that has run out of time, or 0 if the build has
+	completed. This is only an estimate of the area the frontier is
+	missing, compared to a complete build, not a bound: a later
+	layer may add more than the last completed one did. */
+    public double getLastLayerGain() { return lastLayerGain; }
+    /** Returns a bound on how much smaller the area under this
+	frontier is than it would have been without {@link VSMethod#CAP
+	the vertex cap}: the largest vertical distance between the two
+	frontiers (accumulated over the whole build; see {@link
+	FrontierInfo#capGap}), times the cost of INSPECT. This is 0 if
+	no cap has been applied. The bound only covers the test fusion
+	done at pi=0; it is not valid for multi-pi builds. */
+    public double getCapError() { return capGap * getMaxCost(); }
     /** Returns the time taken by the computer to construct the
      * frontier, in milliseconds. This is based on the wall clock
      * time, (not CPU time), so should be taken with a grain of salt
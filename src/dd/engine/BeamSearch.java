@@ -0,0 +1,175 @@
+package dd.engine;
+
+import java.util.*;
+
+/** An approximate frontier builder for sensor menus too large for the
+    exact dynamic programming algorithm of {@link
+    Frontier#buildFrontier(Test[], FrontierContext, int, Vector)}. It
+    proceeds layer by layer, in the same way, but, instead of all
+    subsets of each size, it only keeps the <em>beam</em>: the
+    beamWidth subsets of that size whose frontiers have the largest
+    area under the curve. The next layer's candidates are the sets
+    obtained by adding one more sensor to a set in the beam; the
+    frontier of each candidate is built by fusing its sensors with the
+    frontiers of those of its subsets that are in the beam (rather
+    than of all of them, as in the exact algorithm). The result is the
+    convex hull of the frontiers of all sets that have been in the
+    beam at some point.
+
+    <p>All single-sensor sets are kept, regardless of the beam width.
+    With n distinct sensors, each layer requires building at most
+    beamWidth*n frontiers, so the computation time grows linearly,
+    rather than exponentially, with maxDepth.
+
+    <p>Since every policy considered is also considered by the exact
+    algorithm, the resulting frontier never lies above the exact one;
+    how far below it is can be checked on smaller instances with
+    -DbeamCheck=true in the {@link Main batch application}. With a
+    beam width no smaller than the largest layer of the lattice, the
+    result is the same as the exact one.
+ */
+class BeamSearch {
+
+    /** The sets in the current beam, and their frontiers */
+    private SensorSet beam[];
+    private FrontierInfo beamFrontiers[];
+    /** Maps the rank of a set in the current beam to its position in beam[] */
+    private HashMap<Long,Integer> beamIndex = new HashMap<Long,Integer>();
+
+    private final Test t[];
+    private final FrontierContext context;
+    private final SensorLattice lattice;
+    private final int beamWidth;
+
+    BeamSearch(Test _t[], FrontierContext _context, int _beamWidth) {
+	t = _t;
+	context = _context;
+	beamWidth = _beamWidth;
+	lattice = new SensorLattice(t);
+    }
+
+    /** Carries out the computation; see {@link
+	Frontier#buildFrontierBeam(Test[], FrontierContext, int, int)} */
+    AnnotatedFrontier build(int maxDepth) throws DDException {
+	if (context.multiPi || context.pi != 0) throw new IllegalArgumentException("Wrong method for this context!");
+	if (beamWidth <= 0) throw new IllegalArgumentException("Beam width must be positive");
+
+	final int n = t.length;
+	int maxSetSize = lattice.maxSetSize();
+	if (maxDepth >= 0) maxSetSize = Math.min(maxSetSize, maxDepth);
+	System.out.println("Beam search: "+n + " sensors, maxDepth=" + maxSetSize +
+			   ", beam width=" + beamWidth +
+			   ", VS method="+context.vs+" with eps="+context.eps);
+	Calendar startTime = Calendar.getInstance();
+	if (maxSetSize <= 0) return new AnnotatedFrontier(new Frontier(context), maxDepth, startTime);
+
+	// Sets of one test: all of them
+	Vector<SensorSet> ones = new Vector<SensorSet>();
+	Vector<FrontierInfo> hull = new Vector<FrontierInfo>();
+	for(int i=0; i<n; i++) {
+	    if (t[i].getNCopies()>0) {
+		ones.addElement(lattice.oneSensorSet(i));
+		hull.addElement(new Frontier(t[i], context));
+	    }
+	}
+	setBeam(ones.toArray(new SensorSet[0]), hull.toArray(new FrontierInfo[0]));
+	FrontierInfo result = Frontier.combineFrontiers(hull);
+	long totalCnt = beam.length;
+
+	LayerRunner runner = new LayerRunner(context);
+	try {
+	    for(int setSize=2; setSize<=maxSetSize; setSize++) {
+		final SensorSet[] cand = candidates();
+		if (cand.length == 0) break;
+		final FrontierInfo[] candFrontiers = new FrontierInfo[cand.length];
+		final double[] area = new double[cand.length];
+
+		LayerRunner.Job<FrontierInfo> job = new LayerRunner.Job<FrontierInfo>() {
+		    public FrontierInfo compute(int k) {
+			return buildCandidateFrontier(cand[k]);
+		    }
+		};
+		final long _totalCnt = totalCnt;
+		LayerRunner.Sink<FrontierInfo> sink = new LayerRunner.Sink<FrontierInfo>() {
+		    public boolean accept(int k, FrontierInfo f) {
+			candFrontiers[k] = f;
+			area[k] = f.areaUnderCurve();
+			if (context.callback!=null) {
+			    return context.callback.callback("" + (_totalCnt + k + 1) + " subsets");
+			}
+			return true;
+		    }
+		};
+		if (!runner.run(cand.length, job, sink)) return null;
+		totalCnt += cand.length;
+
+		// the beamWidth best candidates (ties broken by the order
+		// of the candidates, for reproducibility)
+		Integer order[] = new Integer[cand.length];
+		for(int k=0; k<order.length; k++) order[k] = k;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+			    return Double.compare(area[b], area[a]);
+			}
+		    });
+		int m = Math.min(beamWidth, cand.length);
+		SensorSet[] kept = new SensorSet[m];
+		FrontierInfo[] keptFrontiers = new FrontierInfo[m];
+		hull.setSize(0);
+		hull.addElement(result);
+		for(int k=0; k<m; k++) {
+		    kept[k] = cand[order[k]];
+		    keptFrontiers[k] = candFrontiers[order[k]];
+		    hull.addElement(keptFrontiers[k]);
+		}
+		setBeam(kept, keptFrontiers);
+		result = Frontier.combineFrontiers(hull);
+		System.out.println("Layer " + setSize + ": built " + cand.length + " frontiers, kept " + m + ", best area=" + area[order[0]] + "; overall area=" + result.areaUnderCurve());
+	    }
+	} finally {
+	    runner.shutdown();
+	}
+	System.out.println("Beam search built "+totalCnt+" frontiers");
+	return new AnnotatedFrontier(result, maxDepth, startTime);
+    }
+
+    private void setBeam(SensorSet sets[], FrontierInfo frontiers[]) {
+	beam = sets;
+	beamFrontiers = frontiers;
+	beamIndex.clear();
+	for(int k=0; k<beam.length; k++) beamIndex.put(lattice.rank(beam[k]), k);
+    }
+
+    /** Lists (without repetitions) the sets that can be obtained by
+	adding one sensor to a set in the beam */
+    private SensorSet[] candidates() {
+	Vector<SensorSet> v = new Vector<SensorSet>();
+	HashSet<Long> seen = new HashSet<Long>();
+	for(SensorSet ss: beam) {
+	    for(int j=0; j<t.length; j++) {
+		if (ss.cnt[j] >= lattice.maxCnt[j]) continue;
+		SensorSet x = new SensorSet(ss);
+		x.cnt[j]++;
+		if (seen.add(lattice.rank(x))) v.addElement(x);
+	    }
+	}
+	return v.toArray(new SensorSet[0]);
+    }
+
+    /** Builds the frontier for the set ss, as {@link
+	Frontier#buildSubsetFrontier(SensorSet, Test[], FrontierStore)}
+	does, but only using the subsets that are in the beam. This
+	only reads the beam, and can be called from several threads.
+     */
+    private FrontierInfo buildCandidateFrontier(SensorSet ss) {
+	Vector<FrontierInfo> v= new Vector<FrontierInfo>();
+	for(int j=0;j<t.length;j++) {
+	    SensorSet ssMinusTj = ss.minusJ(j);
+	    if (ssMinusTj == null) continue;
+	    Integer k = beamIndex.get(lattice.rank(ssMinusTj));
+	    if (k != null) v.addElement( beamFrontiers[k].testFusion(t[j]));
+	}
+	return Frontier.combineFrontiers(v);
+    }
+
+}
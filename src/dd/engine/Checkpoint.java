@@ -0,0 +1,274 @@
+package dd.engine;
+
+import java.io.*;
+
+/** A checkpoint of a frontier build. The frontier-building dynamic
+    programming algorithm proceeds layer by layer, and, once a layer
+    is complete, nothing but that layer is needed to compute the rest
+    of the lattice. Thus, if {@link Options#getCheckpointFile()} is
+    set, the build saves the last completed layer into the checkpoint
+    file (replacing the previous one) every time it completes a layer;
+    a later run with {@link Options#getResumeFile()} pointing to that
+    file skips the layers that have already been done.
+
+    <p>The file is written with a DataOutputStream. It contains a
+    description of the sensors (their names, multiplicities, costs and
+    ROC curves) and of the contexts (pi, the vertex-skipping method and
+    eps) of the build, so that a checkpoint can't be used for resuming a
+    different computation; the number of the layer; and the frontiers of
+    all sets of that layer, in the order of their {@link
+    SensorLattice#rank(SensorSet) rank}, as arrays of costs c[],
+    detection rates d[], and (in multi-pi builds) costs on bad items
+    e[]. In multi-pi builds, the layer is saved for every pi value.
+
+    <p>Since only the signatures of the frontiers are saved,
+    checkpointing is only supported with signaturesOnly=true.
+ */
+class Checkpoint {
+
+    /** "DDCP" */
+    private static final int MAGIC = 0x44444350;
+    private static final int VERSION = 2;
+
+    /** The size of the sets in the saved layer */
+    final int layer;
+    /** How many frontiers (of all sizes, and for all pi values) the
+	build had saved by the time it completed the layer */
+    final int totalSavedCnt;
+    /** frontiers[j][rank] belongs to the j-th context */
+    private final ColumnFrontier frontiers[][];
+
+    private Checkpoint(int _layer, int _totalSavedCnt, ColumnFrontier _frontiers[][]) {
+	layer = _layer;
+	totalSavedCnt = _totalSavedCnt;
+	frontiers = _frontiers;
+    }
+
+    /** Returns the checkpoint file requested via {@link
+	Options#getCheckpointFile()}, or null if none has been
+	requested. */
+    static File checkpointFile() throws DDException {
+	File f = Options.getCheckpointFile();
+	if (f != null && !Options.signaturesOnly) throw new DDException("Checkpointing can only be used with signaturesOnly=true");
+	return f;
+    }
+
+    /** Reads the checkpoint requested via {@link Options#getResumeFile()},
+	if any, and checks that it has been written by the same
+	computation.
+	@param maxSetSize The size of the largest sets the build is to process
+	@return The checkpoint, or null if resuming has not been requested
+     */
+    static Checkpoint resume(Test t[], FrontierContext contexts[], int maxSetSize) throws DDException {
+	File f = Options.getResumeFile();
+	if (f == null) return null;
+	if (!Options.signaturesOnly) throw new DDException("Resuming can only be used with signaturesOnly=true");
+	Checkpoint cp = read(f, t, contexts);
+	if (cp.layer > maxSetSize) {
+	    throw new DDException("Checkpoint file " + f + " contains sets of size " + cp.layer + ", which exceeds the maximum depth " + maxSetSize);
+	}
+	System.out.println("Resuming from checkpoint " + f + ", after layer " + cp.layer);
+	return cp;
+    }
+
+    /** Saves the given layer of the stores into the file. To make sure
+	that an interruption while writing doesn't destroy the previous
+	checkpoint, the data are first written into a temporary file,
+	which then replaces the old checkpoint.
+	@param stores The store for each context
+	@param size The number of sets in the layer
+     */
+    static void write(File f, Test t[], FrontierContext contexts[], int layer, int totalSavedCnt, FrontierStore stores[], int size) throws DDException {
+	File tmp = new File(f.getPath() + ".tmp");
+	try {
+	    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+	    try {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeDescription(out, t, contexts);
+		out.writeInt(layer);
+		out.writeInt(totalSavedCnt);
+		out.writeInt(size);
+		for(int j=0; j<contexts.length; j++) {
+		    for(int rank=0; rank<size; rank++) {
+			writeFrontier(out, stores[j].get(layer, rank), contexts[j].multiPi);
+		    }
+		}
+	    } finally {
+		out.close();
+	    }
+	} catch(IOException ex) {
+	    tmp.delete();
+	    throw new DDException("Error writing checkpoint file " + tmp + ": " + ex.getMessage());
+	}
+	// renameTo() may fail if the target exists, on some platforms
+	if (!tmp.renameTo(f) && !(f.delete() && tmp.renameTo(f))) {
+	    throw new DDException("Could not rename " + tmp + " to " + f);
+	}
+	System.out.println("Saved checkpoint after layer " + layer + " into " + f);
+    }
+
+    /** Reads a checkpoint file, checking that it has been written by a
+	computation with the same sensors and contexts */
+    static Checkpoint read(File f, Test t[], FrontierContext contexts[]) throws DDException {
+	try {
+	    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+	    try {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+		    throw new DDException("File " + f + " is not a checkpoint file, or has been written by a different version of the program");
+		}
+		String mismatch = checkDescription(in, t, contexts, -1);
+		if (mismatch != null) {
+		    throw new DDException("Checkpoint file " + f + " has been written by a different computation: " + mismatch);
+		}
+		int layer = in.readInt();
+		int totalSavedCnt = in.readInt();
+		int size = in.readInt();
+		ColumnFrontier frontiers[][] = new ColumnFrontier[contexts.length][size];
+		for(int j=0; j<contexts.length; j++) {
+		    for(int rank=0; rank<size; rank++) {
+			frontiers[j][rank] = readFrontier(in, contexts[j]);
+		    }
+		}
+		return new Checkpoint(layer, totalSavedCnt, frontiers);
+	    } finally {
+		in.close();
+	    }
+	} catch(EOFException ex) {
+	    throw new DDException("Checkpoint file " + f + " is truncated");
+	} catch(IOException ex) {
+	    throw new DDException("Error reading checkpoint file " + f + ": " + ex.getMessage());
+	}
+    }
+
+    /** Puts the saved frontiers into the stores (one per context), and
+	completes the layer there */
+    void restore(FrontierStore stores[]) throws DDException {
+	for(int j=0; j<stores.length; j++) {
+	    stores[j].startLayer(layer, frontiers[j].length);
+	    for(int rank=0; rank<frontiers[j].length; rank++) {
+		if (frontiers[j][rank] != null) stores[j].put(layer, rank, frontiers[j][rank]);
+	    }
+	    stores[j].endLayer(layer);
+	}
+    }
+
+    /** Writes the number of vertices of the frontier (or -1, if f is
+	null), followed by the costs c[], the detection rates d[], and,
+	if withE is true, the costs on bad items e[] of the vertices, and,
+	with {@link VSMethod#CAP}, the frontier's {@link
+	FrontierInfo#capGap}. This is also used in {@link LatticeFile}s. */
+    static void writeFrontier(DataOutputStream out, FrontierInfo f, boolean withE) throws IOException {
+	if (f == null) {
+	    out.writeInt(-1);
+	    return;
+	}
+	ColumnFrontier cf = ColumnFrontier.of(f);
+	final int n = cf.length();
+	out.writeInt(n);
+	for(int i=0; i<n; i++) out.writeDouble(cf.c[i]);
+	for(int i=0; i<n; i++) out.writeDouble(cf.d[i]);
+	if (withE) {
+	    for(int i=0; i<n; i++) out.writeDouble(cf.e[i]);
+	}
+	if (f.context.vs == VSMethod.CAP) out.writeDouble(cf.capGap);
+    }
+
+    /** Reads a frontier written by {@link
+	#writeFrontier(DataOutputStream, FrontierInfo, boolean)}. The
+	costs on bad items are expected if the context is a multi-pi one.
+	@return The frontier, or null
+     */
+    static ColumnFrontier readFrontier(DataInputStream in, FrontierContext context) throws IOException {
+	int n = in.readInt();
+	if (n < 0) return null;
+	double c[] = new double[n], d[] = new double[n];
+	double e[] = context.multiPi ? new double[n] : null;
+	for(int i=0; i<n; i++) c[i] = in.readDouble();
+	for(int i=0; i<n; i++) d[i] = in.readDouble();
+	if (e != null) {
+	    for(int i=0; i<n; i++) e[i] = in.readDouble();
+	}
+	ColumnFrontier cf = new ColumnFrontier(c, e, d, context);
+	if (context.vs == VSMethod.CAP) cf.capGap = in.readDouble();
+	return cf;
+    }
+
+    /** Writes a description of the sensors (their names,
+	multiplicities, costs and ROC curves) and of the contexts (pi, the
+	vertex-skipping method and eps, and the costs of INSPECT, which
+	reflect E) of a computation. This is also
+	used in {@link LatticeFile}s. */
+    static void writeDescription(DataOutputStream out, Test t[], FrontierContext contexts[]) throws IOException {
+	out.writeInt(t.length);
+	for(Test q: t) {
+	    out.writeUTF(q.getName());
+	    out.writeInt(q.getNCopies());
+	    out.writeDouble(q.getCost());
+	    out.writeInt(q.getM());
+	    for(int i=0; i<q.getM(); i++) {
+		out.writeDouble(q.sumBad(i));
+		out.writeDouble(q.sumGood(i));
+	    }
+	}
+	out.writeInt(contexts.length);
+	for(FrontierContext c: contexts) {
+	    out.writeBoolean(c.multiPi);
+	    out.writeDouble(c.pi);
+	    out.writeUTF(c.vsDescription());
+	    out.writeDouble(c.eps);
+	    out.writeDouble(c.INSPECT.c);
+	    out.writeDouble(c.INSPECT.e);
+	    out.writeDouble(c.INSPECT.d);
+	}
+    }
+
+    /** Reads the description of the sensors and contexts (written by
+	{@link #writeDescription(DataOutputStream, Test[], FrontierContext[])}), and
+	compares it with the actual ones.
+	@param changed If not negative, the index of a sensor whose cost
+	and ROC curve are allowed to differ (its name and multiplicity
+	still have to be the same)
+	@return null if they match, or a description of the first
+	difference otherwise
+     */
+    static String checkDescription(DataInputStream in, Test t[], FrontierContext contexts[], int changed) throws IOException {
+	int n = in.readInt();
+	if (n != t.length) return "" + n + " sensors instead of " + t.length;
+	for(int k=0; k<n; k++) {
+	    Test q = t[k];
+	    String name = in.readUTF();
+	    if (!name.equals(q.getName())) return "sensor["+k+"] is " + name + " instead of " + q.getName();
+	    if (in.readInt() != q.getNCopies()) return "sensor["+k+"] (" + name + ") has a different multiplicity";
+	    double cost = in.readDouble();
+	    int m = in.readInt();
+	    boolean same = (m == q.getM());
+	    for(int i=0; i<m; i++) {
+		double b = in.readDouble(), g = in.readDouble();
+		if (same && (b != q.sumBad(i) || g != q.sumGood(i))) same = false;
+	    }
+	    if (k == changed) continue;
+	    if (cost != q.getCost()) return "sensor["+k+"] (" + name + ") has a different cost";
+	    if (!same) return "sensor["+k+"] (" + name + ") has a different ROC curve";
+	}
+	int np = in.readInt();
+	if (np != contexts.length) return "" + np + " pi values instead of " + contexts.length;
+	for(int j=0; j<np; j++) {
+	    FrontierContext c = contexts[j];
+	    boolean multiPi = in.readBoolean();
+	    double pi = in.readDouble();
+	    String vs = in.readUTF();
+	    double eps = in.readDouble();
+	    if (multiPi != c.multiPi || pi != c.pi) return "pi["+j+"]=" + pi + " instead of " + c.pi;
+	    if (!vs.equals(c.vsDescription()) || eps != c.eps) {
+		return "vertex skipping with " + vs + ", eps=" + eps + ", instead of " + c.vsDescription() + ", eps=" + c.eps;
+	    }
+	    double ic = in.readDouble(), ie = in.readDouble(), id = in.readDouble();
+	    if (ic != c.INSPECT.c || ie != c.INSPECT.e || id != c.INSPECT.d) {
+		return "INSPECT=(" + ic + " " + ie + " " + id + ") instead of (" + c.INSPECT.c + " " + c.INSPECT.e + " " + c.INSPECT.d + "); was E different?";
+	    }
+	}
+	return null;
+    }
+
+}
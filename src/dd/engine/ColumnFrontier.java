@@ -0,0 +1,385 @@
+package dd.engine;
+
+/** A columnar ("structure of arrays") representation of a frontier:
+    the costs and detection rates of the vertices are kept in
+    primitive arrays, rather than in PolicySignature objects. This is
+    the representation used by the frontier-building dynamic
+    programming algorithm when signaturesOnly=true: test fusion, the
+    merging of frontiers, vertex selection and approximation, and
+    (in multi-pi runs) realignment all work on the arrays directly,
+    so no per-vertex objects are created. The frontiers stored for
+    the subsets of the lattice are ColumnFrontiers, too.
+
+    <p>As in {@link Frontier}, since every convex hull includes the
+    two trivial policies, (0,0) and (1,1), we don't explicitly store
+    them in the representation.
+ */
+public class ColumnFrontier extends FrontierInfo {
+
+    /** c[i] and d[i] are the cost (on good items) and the detection
+	rate of the i-th vertex; e[i] is its cost on bad items. The
+	latter is only needed in multi-pi runs, and otherwise e is null.
+     */
+    final double c[], e[], d[];
+
+    /** @param _e May be null, if the context is not a multi-pi one */
+    ColumnFrontier(double _c[], double _e[], double _d[], FrontierContext _context) {
+	if (_c.length != _d.length || (_e != null && _e.length != _c.length)) {
+	    throw new IllegalArgumentException("Column length mismatch");
+	}
+	c = _c;
+	e = _e;
+	d = _d;
+	context = _context;
+    }
+
+    /** Creates a frontier out of the vertices with indexes
+	kept[0..n-1] in the workspace's output arrays. The cost on bad items
+	is only copied in a multi-pi context.
+     */
+    static ColumnFrontier fromWorkspace(FusionWorkspace ws, int kept[], int n, FrontierContext context) {
+	double c[] = new double[n], d[] = new double[n];
+	double e[] = context.multiPi ? new double[n] : null;
+	for(int i=0; i<n; i++) {
+	    int j = kept[i];
+	    c[i] = ws.c[j];
+	    d[i] = ws.d[j];
+	    if (e != null) e[i] = ws.e[j];
+	}
+	return new ColumnFrontier(c, e, d, context);
+    }
+
+    /** Returns f itself, if it's already a ColumnFrontier, or its
+	columnar copy otherwise */
+    static ColumnFrontier of(FrontierInfo f) {
+	if (f instanceof ColumnFrontier) return (ColumnFrontier)f;
+	final int n = f.length();
+	double c[] = new double[n], d[] = new double[n];
+	double e[] = f.context.multiPi ? new double[n] : null;
+	for(int i=0; i<n; i++) {
+	    c[i] = f.getPolicyCost0(i);
+	    d[i] = f.getDetectionRate(i);
+	    if (e != null) e[i] = f.getPolicyCostOnBad(i);
+	}
+	ColumnFrontier cf = new ColumnFrontier(c, e, d, f.context);
+	cf.capGap = f.capGap;
+	return cf;
+    }
+
+    Frontier getFrontier() {
+	Frontier f = new Frontier(getPolicies(), context);
+	f.capGap = capGap;
+	return f;
+    }
+
+    public PolicySignature[] getPolicies() {
+	PolicySignature pp[] = new PolicySignature[length()];
+	for(int i=0; i<length(); i++) {
+	    pp[i] = getPolicy(i);
+	}
+	return pp;
+    }
+
+    PolicySignature[] getPoliciesCopy() {
+	return getPolicies();
+    }
+
+    public PolicySignature getPolicy(int i) {
+	return (i==-1)? Policy.RELEASE :
+	    i==length()? context.INSPECT: e==null?
+	    new PolicySignature( c[i], d[i]):
+	    new PolicySignature( c[i], e[i], d[i]);
+    }
+
+    final public double getDetectionRate(int i) {
+	return (i== -1) ? 0 : i==d.length? context.INSPECT.d : d[i];
+    }
+
+    final public double getPolicyCost0(int i) {
+	return (i== -1) ? 0 : i==c.length? context.INSPECT.c : c[i];
+    }
+
+    final public double getPolicyCostOnBad(int i) {
+	if (e==null) throw new AssertionError("Columnar rep does not store cost on bad");
+	return (i== -1) ? 0 : i==e.length? context.INSPECT.e : e[i];
+    }
+
+    final public double getPolicyCostPi(int i) {
+	if (i==-1) return 0;
+	else if ( i==c.length) return context.getInspectCostPi() ;
+	return costAt(i, context.pi);
+    }
+
+    /** The cost of the i-th vertex at the given pi; the same
+	computation as in {@link PolicySignature#getPolicyCost(double)} */
+    private double costAt(int i, double pi) {
+	if (pi==0) return c[i];
+	if (e==null) throw new AssertionError("Columnar rep does not store cost on bad");
+	return PolicySignature.getPolicyCost(c[i], e[i], pi);
+    }
+
+    /** How many non-trivial policies are stored */
+    public int length() {
+	return c.length;
+    }
+
+    /** Reorders vertices, and maybe drops some, for them to form a
+	frontier under a given pi value. This is the same as {@link
+	FrontierInfo#realign(FrontierContext)}, except that an array of
+	vertex indexes, rather than an array of objects, is sorted.
+     */
+    FrontierInfo realign(FrontierContext newContext) {
+	final int n = length();
+	final double pi = newContext.pi;
+	FusionWorkspace ws = FusionWorkspace.get();
+	ws.ensureOutput(n);
+	ws.ensureSort(n);
+	double cost[] = ws.cost;
+	int order[] = ws.sorted;
+	for(int i=0; i<n; i++) {
+	    cost[i] = costAt(i, pi);
+	    order[i] = i;
+	}
+
+	// sort with respect to cost for this pi; like Arrays.sort() on
+	// objects, this is a stable sort
+	sortByCost(order, ws.sortTmp, 0, n, cost, d);
+
+	for(int i=0; i<n; i++) {
+	    int j = order[i];
+	    ws.c[i] = c[j];
+	    ws.d[i] = d[j];
+	    if (e != null) ws.e[i] = e[j];
+	}
+	for(int i=0; i<n; i++) cost[i] = costAt(order[i], pi);
+
+	int nkept = Frontier.selectNecessaryVertices(cost, ws.d, n, newContext, ws.kept);
+	return fromWorkspace(ws, ws.kept, nkept, newContext);
+    }
+
+    /** Merge-sorts a[from..to-1] by cost (and, for equal costs, by
+	detection rate), in the same order as {@link
+	FrontierInfo.PSCostComparator}. The sort is stable.
+    */
+    private static void sortByCost(int a[], int tmp[], int from, int to,
+				   double cost[], double d[]) {
+	if (to - from < 2) return;
+	int mid = (from + to) >>> 1;
+	sortByCost(a, tmp, from, mid, cost, d);
+	sortByCost(a, tmp, mid, to, cost, d);
+	if (compare(a[mid-1], a[mid], cost, d) <= 0) return; // already in order
+	System.arraycopy(a, from, tmp, from, to - from);
+	int i = from, j = mid, k = from;
+	while(i < mid && j < to) {
+	    a[k++] = (compare(tmp[j], tmp[i], cost, d) < 0) ? tmp[j++] : tmp[i++];
+	}
+	while(i < mid) a[k++] = tmp[i++];
+	while(j < to) a[k++] = tmp[j++];
+    }
+
+    private static int compare(int i, int j, double cost[], double d[]) {
+	double x = cost[i] - cost[j];
+	return (x<0) ? -1 : (x>0) ? 1 : (int)Math.signum(d[i] - d[j]);
+    }
+
+    /** Builds the convex hull over several frontiers (which may be
+	in any representation; the ones that are not columnar are
+	converted first). This is the columnar version of {@link
+	Frontier#combineFrontiers(Frontier[])}: the vertices of all
+	frontiers are merged in a single pass (with a heap holding
+	the current vertex of each input, keyed on its cost), the
+	unnecessary vertices are removed, and the additional vertex
+	skipping requested by the context's VSMethod is applied. The
+	computations are the same as in the object version, so that
+	the results are identical.
+
+	@param context The context of the result; all inputs must
+	have the same pi.
+     */
+    static ColumnFrontier combine(FrontierInfo fArray[], FrontierContext context) {
+	final int nIn = fArray.length;
+	final double pi = context.pi;
+	ColumnFrontier in[] = new ColumnFrontier[nIn];
+	int total = 0;
+	for(int k=0; k<nIn; k++) {
+	    if (fArray[k].context.pi != pi) {
+		throw new IllegalArgumentException("pi mismatch");
+	    }
+	    in[k] = of(fArray[k]);
+	    total += in[k].length();
+	}
+
+	if (Frontier.debug) {
+	    System.out.println("CombiF: ======================");
+	    for(ColumnFrontier fy: in) {
+		System.out.println("CombiF: other frontier=" + fy.getFrontier());
+	    }
+	    System.out.println("CombiF: ======================");
+	}
+
+	FusionWorkspace ws = FusionWorkspace.get();
+	ws.ensureOutput(total);
+	ws.ensureInputs(nIn);
+	IndexHeap heap = ws.heap;
+	int pos[] = ws.pos, tied[] = ws.tied;
+	heap.clear();
+
+	for(int k=0; k<nIn; k++) {
+	    ColumnFrontier x = in[k];
+	    int px = 0;
+	    // skip the R policy, in case it was stored explicitly
+	    while(px < x.length() && x.d[px] == 0) px++;
+	    pos[k] = px;
+	    // each heap key is the cached cost of the input's current vertex
+	    if (px < x.length()) heap.add(k, x.costAt(px, pi));
+	}
+
+	int pz = 0;
+	double lastCost = 0;
+
+	while(!heap.isEmpty()) {
+	    // take the current vertices of all inputs that have the
+	    // lowest cost; of those, keep the one with the highest d
+	    // (the later input, if d is the same, too)
+	    double cost = heap.peekKey();
+	    int nt = 0;
+	    while(!heap.isEmpty() && heap.peekKey() == cost) {
+		tied[nt++] = heap.poll();
+	    }
+	    int best = -1, bestJ = -1;
+	    for(int i=0; i<nt; i++) {
+		int k = tied[i];
+		ColumnFrontier x = in[k];
+		int j = pos[k];
+		if (best < 0 || x.d[j] > in[best].d[bestJ] ||
+		    (x.d[j] == in[best].d[bestJ] && k > best)) {
+		    best = k;
+		    bestJ = j;
+		}
+		// advance this input
+		pos[k]++;
+		if (pos[k] < x.length()) heap.add(k, x.costAt(pos[k], pi));
+	    }
+
+	    if (pz>0 && cost < lastCost) {
+		throw new AssertionError("" +  cost + "<" + lastCost);
+	    }
+
+	    ColumnFrontier x = in[best];
+	    ws.c[pz] = x.c[bestJ];
+	    ws.d[pz] = x.d[bestJ];
+	    if (x.e != null) ws.e[pz] = x.e[bestJ];
+	    ws.cost[pz] = cost;
+	    pz++;
+	    lastCost = cost;
+	}
+
+	// Selection and approximation are applied only once, after all
+	// vertices have been put into a single list
+	int nkept = Frontier.selectNecessaryVertices(ws.cost, ws.d, pz, context, ws.kept);
+
+	// The inputs' gaps, if they have been capped
+	double gap = 0;
+	for(ColumnFrontier x: in) gap = Math.max(gap, x.capGap);
+
+	// Additional vertex-skipping, if requested
+	if (context.vs==VSMethod.EB1) {
+	    nkept = approximateEB1(ws, nkept, context);
+	} else if  (context.vs==VSMethod.VM2) {
+	    nkept = approximateVM2(ws, nkept, context);
+	} else if  (context.vs==VSMethod.CAP) {
+	    nkept = Frontier.approximateCap(ws.cost, ws.d, ws.kept, nkept, context, ws);
+	    gap += ws.capGap;
+	}
+
+	ColumnFrontier result = fromWorkspace(ws, ws.kept, nkept, context);
+	result.capGap = gap;
+	if (Frontier.debug) {
+	    System.out.println("CombiF: result frontier=" + result.getFrontier());
+	    System.out.println("CombiF: ======================");
+	}
+	return result;
+    }
+
+    /** The columnar version of {@link Frontier#approximateEB1()}. It
+	works on the list of vertices ws.kept[0..n-1] (indexes into
+	the workspace's output arrays), and shortens it in place.
+	@return The new length of the list
+     */
+    private static int approximateEB1(FusionWorkspace ws, int n, FrontierContext context) {
+	if (n==0) return 0;
+	int kept[] = ws.kept;
+	final double eps = context.eps;
+	int pz = 0;
+	int s = -1;
+	// Since s only increases, and pz<=s, kept[] entries are only
+	// overwritten after they have been used
+	while(true) {
+	    double psC = (s<0) ? 0 : ws.c[kept[s]], psD = (s<0) ? 0 : ws.d[kept[s]];
+	    int i=s+1;
+	    for(double M=0; i<=n; i++) {
+		double pjC = (i==n) ? context.INSPECT.c : ws.c[kept[i]];
+		double pjD = (i==n) ? context.INSPECT.d : ws.d[kept[i]];
+		if ((pjD - psD)*(1+eps) < M*(pjC - psC)) break;
+		M = Math.max(M, (pjD - (1+eps)*psD)/(pjC - psC));
+	    }
+	    s = (i-1);
+	    if (s < n) {
+		kept[pz++] = kept[s];
+	    } else {
+		break; // we don't store INSPECT
+	    }
+	}
+	if (Frontier.debug) System.out.println("EB1: reduced vertex count from " + n + " to "  + pz);
+	return pz;
+    }
+
+    /** The columnar version of {@link Frontier#approximateVM2()}. It
+	works on the list of vertices ws.kept[0..n-1] (indexes into
+	the workspace's output arrays), and shortens it in place.
+	@return The new length of the list
+     */
+    private static int approximateVM2(FusionWorkspace ws, int n, FrontierContext context) {
+	if (n==0) return 0;
+	int kept[] = ws.kept;
+	double cost[] = ws.cost, d[] = ws.d;
+	final double inspectCost = context.getInspectCostPi(), inspectD = context.INSPECT.d;
+	final double eps2 = context.eps*context.eps;
+	// index -1 stands for RELEASE, and n, for INSPECT
+	int nKept = 0;
+	double totalS = 0;
+	for(int i=0; i<n; ) {
+	    double baseC = 0, baseD = 0;
+	    if (nKept > 0) {
+		baseC = cost[kept[nKept-1]];
+		baseD = d[kept[nKept-1]];
+	    }
+	    double s=0;
+
+	    int head = i++;
+	    double headC = cost[kept[head]], headD = d[kept[head]];
+	    while( i<= n ) {
+		double nextC = (i==n) ? inspectCost : cost[kept[i]];
+		double nextD = (i==n) ? inspectD : d[kept[i]];
+		double sNew = s + PolicySignature.compareToRay(headC, headD, baseC, baseD, nextC, nextD);
+		double dc = nextC - baseC, dd = nextD - baseD;
+		if (sNew*sNew > eps2 * (dc*dc + dd*dd)) break;
+		s = sNew;
+		head = i;
+		headC = nextC;
+		headD = nextD;
+		i++;
+	    }
+
+	    // Since nKept<=head, kept[] entries are only overwritten
+	    // after they have been used
+	    if (head != n) {
+		kept[nKept++] = kept[head];
+	    }
+	    totalS += s;
+	}
+	System.out.println("VM2: total excluded area=" + totalS);
+	return nKept;
+    }
+
+}
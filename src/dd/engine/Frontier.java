@@ -211,94 +211,143 @@ public class Frontier extends FrontierInfo {
 	return sum;
     }
 
-    static private Frontier combineFrontiers( Vector<Frontier> v) {
+    /** Builds the convex hull over several frontiers. If
+	signaturesOnly==true, this is done on the columnar
+	representation (and the result is a {@link ColumnFrontier});
+	otherwise, all frontiers must be Frontier objects (with
+	policy trees), and so will be the result.
+     */
+    static FrontierInfo combineFrontiers( Vector<FrontierInfo> v) {
 	if (v.size() == 0) throw new IllegalArgumentException("combineFrontier on an empty vector!");
-	Frontier newHull = new Frontier(v.elementAt(0).context);
-	Frontier[] a = v.toArray(new Frontier[0]);
+	FrontierInfo[] a = v.toArray(new FrontierInfo[0]);
 	for(int i=0; i<a.length; i++) {
 	    if (Options.paranoid && !a[i].validate())  throw new AssertionError("frontier a[i] no good!");
 	}
-	newHull.combineFrontiers(a);
+	if (Options.signaturesOnly) return ColumnFrontier.combine(a, a[0].context);
+
+	Frontier newHull = new Frontier(a[0].context);
+	Frontier[] fa = new Frontier[a.length];
+	for(int i=0; i<a.length; i++) fa[i] = (Frontier)a[i];
+	newHull.combineFrontiers(fa);
 	return newHull;
     }
 
-    private void combineFrontiers( Frontier fy) {
-	if (Options.paranoid && !validate())  throw new AssertionError("this frontier no good!");
+    /** Combines frontier fy into f (whose context is retained), in the
+	same way as {@link #combineFrontiers(Vector)}.
+	@return The combined frontier. This may be f itself, modified.
+     */
+    static private FrontierInfo combineFrontiers(FrontierInfo f, FrontierInfo fy) {
+	if (Options.paranoid && !f.validate())  throw new AssertionError("this frontier no good!");
 	if (Options.paranoid && !fy.validate())  throw new AssertionError("frontier fy no good!");
-	combineFrontiers(new Frontier[] {fy});
+	if (Options.signaturesOnly) {
+	    return ColumnFrontier.combine(new FrontierInfo[] {f, fy}, f.context);
+	}
+	((Frontier)f).combineFrontiers(new Frontier[] {(Frontier)fy});
+	return f;
     }
 
-    /** Taking this Frontier and another one, each describing a convex
-	hull, replaces this frontier with one that describes a convex
-	hull above both of them.
-
-	All policies ought to have the same pi
+    /** Taking this Frontier and several other ones, each describing a
+	convex hull, replaces this frontier with one that describes a
+	convex hull above all of them.
+
+	<p>All policies ought to have the same pi. The vertices of all
+	frontiers are merged in a single pass (a k-way merge, with a heap
+	holding the current vertex of each input frontier, keyed on its
+	cost), into a single output array, and then the unnecessary
+	vertices are removed. When several input frontiers have vertices
+	of the same cost, only the one with the highest detection rate
+	is kept.
     */
     private void combineFrontiers( Frontier fArray[]) {
 	for(Frontier fy: fArray) {
 	    if (context.pi != fy.context.pi) {
 		throw new IllegalArgumentException("pi mismatch");
 	    }
+	}
 	    
-	    if (debug) {
-		System.out.println("CombiF: ======================");
-		System.out.println("CombiF: this  frontier=" + this);
+	if (debug) {
+	    System.out.println("CombiF: ======================");
+	    System.out.println("CombiF: this  frontier=" + this);
+	    for(Frontier fy: fArray) {
 		System.out.println("CombiF: other frontier=" + fy);
-		System.out.println("CombiF: ======================");
 	    }
-	    PolicySignature x[] = policies;
-	    PolicySignature y[] = fy.policies;
+	    System.out.println("CombiF: ======================");
+	}
 
-	    int px=0;
-	    int py=0;
+	// input 0 is this frontier, inputs 1 thru fArray.length are the others
+	final int nIn = fArray.length + 1;
+	PolicySignature in[][] = new PolicySignature[nIn][];
+	in[0] = policies;
+	for(int k=1; k<nIn; k++) in[k] = fArray[k-1].policies;
+
+	int pos[] = new int[nIn];
+	IndexHeap heap = new IndexHeap(nIn);
+	int total = 0;
+	for(int k=0; k<nIn; k++) {
+	    PolicySignature x[] = in[k];
+	    int px = 0;
 	    // skip the R policy, in case it was stored explicitly
 	    while(px < x.length && x[px].d == 0) px++;
-	    while(py < y.length && y[py].d == 0) py++;
-	    PolicySignature[] z = new PolicySignature[x.length + y.length ];
-	    int pz = 0;
-	    
-	    while(px < x.length || py < y.length) {
-		
-		PolicySignature nextP;
-		if (px == x.length) {
-		    nextP = y[py++];
-		} else if (py == y.length) {
-		    nextP = x[px++];
-		} else if (x[px].getPolicyCost(context.pi) < y[py].getPolicyCost(context.pi)) {
-		    nextP = x[px++];
-		} else if (x[px].getPolicyCost(context.pi) == y[py].getPolicyCost(context.pi)) {
-		    if (x[px].d > y[py].d) {
-			nextP = x[px++];
-			py++;
-		    } else {
-			nextP = y[py++];
-			px++;
-		    }
-		} else {
-		    nextP = y[py++];
-		}
-		
-		if (pz>0 && nextP.getPolicyCost(context.pi) < z[pz-1].getPolicyCost(context.pi)) {
-		    throw new AssertionError("" +  nextP.getPolicyCost(context.pi) + "<" + z[pz-1].getPolicyCost(context.pi));
+	    pos[k] = px;
+	    total += x.length - px;
+	    // each heap key is the cached cost of the input's current vertex
+	    if (px < x.length) heap.add(k, x[px].getPolicyCost(context.pi));
+	}
+
+	PolicySignature[] z = new PolicySignature[total];
+	int pz = 0;
+	int tied[] = new int[nIn];
+	double lastCost = 0;
+
+	while(!heap.isEmpty()) {
+	    // take the current vertices of all inputs that have the
+	    // lowest cost; of those, keep the one with the highest d
+	    // (the later input, if d is the same, too)
+	    double cost = heap.peekKey();
+	    int nt = 0;
+	    while(!heap.isEmpty() && heap.peekKey() == cost) {
+		tied[nt++] = heap.poll();
+	    }
+	    PolicySignature nextP = null;
+	    int best = -1;
+	    for(int i=0; i<nt; i++) {
+		int k = tied[i];
+		PolicySignature p = in[k][pos[k]];
+		if (nextP == null || p.d > nextP.d || (p.d == nextP.d && k > best)) {
+		    nextP = p;
+		    best = k;
 		}
-		
-		z[pz++] = nextP;
+		// advance this input
+		pos[k]++;
+		if (pos[k] < in[k].length) heap.add(k, in[k][pos[k]].getPolicyCost(context.pi));
 	    }
 
-	    if (pz != z.length) z = trim(z, pz);
-	
-	    policies = z;
+	    if (pz>0 && cost < lastCost) {
+		throw new AssertionError("" +  cost + "<" + lastCost);
+	    }
+		
+	    z[pz++] = nextP;
+	    lastCost = cost;
 	}
 
+	if (pz != z.length) z = trim(z, pz);
+	
+	policies = z;
+
 	// Selection and approximation are applied only once, after all
 	// vertices have been put into a single list
 	selectNecessaryVerticesFromSortedList(); //triangleEps);
 
+	// The inputs' gaps, if they have been capped
+	for(Frontier fy: fArray) capGap = Math.max(capGap, fy.capGap);
+
 	// Additional vertex-skipping, if requested
 	if (context.vs==VSMethod.EB1) {
 	    approximateEB1();
 	} else if  (context.vs==VSMethod.VM2) {
 	    approximateVM2();
+	} else if  (context.vs==VSMethod.CAP) {
+	    approximateCap();
 	}
 
 	if (debug) {
@@ -373,18 +422,236 @@ public class Frontier extends FrontierInfo {
     public static AnnotatedFrontier 
 	buildFrontier(Test t[], FrontierContext context, int maxDepth, 
 		      Vector<AnnotatedFrontier> others) throws DDException {
+	return buildFrontier(t, context, maxDepth, others, null, -1, 0, null);
+    }
+
+    /** An "anytime" version of {@link #buildFrontier(Test[],
+	FrontierContext, int, Vector)}: the frontier is built layer by
+	layer, as usual, but if it appears that there is not enough
+	time left to complete the next layer before the deadline (or if
+	the deadline passes while the layer is being processed), the
+	computation stops, and the frontier of the policies using as many
+	sensors as the last completed layer's sets is returned. This is
+	the same frontier as the one a build with maxDepth equal to that
+	number would produce; the number is reported by {@link
+	AnnotatedFrontier#getEffectiveDepth()}.
+
+	<p>The area gained with the last completed layer is reported via
+	{@link AnnotatedFrontier#getLastLayerGain()}. Since each
+	additional layer usually adds less area than the previous one,
+	this gives an idea of the area by which the returned frontier
+	falls short of the frontier of the complete build; it is only an
+	estimate, not a bound. If the build completes in time, the
+	result is the same as that of buildFrontier(), and the gain
+	reported is 0.
+
+	<p>At least the 1-sensor layer is always completed, so with an
+	extremely short deadline the result is the convex hull of the
+	single-sensor frontiers.
+
+	@param deadline The time (as returned by {@link
+	System#currentTimeMillis()}) by which the result is needed
+     */
+    public static AnnotatedFrontier 
+	buildFrontierByDeadline(Test t[], FrontierContext context, int maxDepth, 
+				long deadline) throws DDException {
+	if (deadline <= 0) throw new IllegalArgumentException("Invalid deadline " + deadline);
+	return buildFrontier(t, context, maxDepth, null, null, -1, deadline, null);
+    }
+
+    /** An approximate version of {@link #buildFrontier(Test[],
+	FrontierContext, int, Vector)}, for sensor sets too large for
+	the exact algorithm: in each layer of the subset lattice, only
+	the beamWidth subsets with the largest area under the frontier
+	are kept and extended further. The resulting frontier is never
+	above the exact one, and coincides with it if beamWidth is at
+	least as large as the largest layer. See {@link BeamSearch}.
+
+	@param beamWidth How many subsets of each size to keep
+     */
+    public static AnnotatedFrontier 
+	buildFrontierBeam(Test t[], FrontierContext context, int maxDepth, 
+			  int beamWidth) throws DDException {
+	return new BeamSearch(t, context, beamWidth).build(maxDepth);
+    }
+
+    /** An alternative to {@link #buildFrontier(Test[],
+	FrontierContext, int, Vector)} which, instead of building the
+	frontiers of all subsets of the sensor set, traces the vertices of
+	the final frontier one by one, by parametric search over the
+	slope of the supporting line (see {@link
+	PointQuery#traceFrontier()}). Each probe is a flat sweep over the
+	lattice for a single slope, but a frontier of k vertices takes
+	2k+1 of them, so this engine is <em>much slower</em> than the
+	default one: 3-20 times on the sensor sets we have tried (e.g.
+	2.3 sec vs. 0.1 sec for 7 sensors), and more the more vertices
+	the frontier has. It is not meant as a faster alternative, but
+	as an independent computation of the same frontier, for
+	cross-checking. Only available for pi=0.
+     */
+    public static AnnotatedFrontier 
+	buildFrontierParametric(Test t[], FrontierContext context, 
+				int maxDepth) throws DDException {
+	Calendar startTime = Calendar.getInstance();
+	PointQuery q = new PointQuery(t, context, maxDepth);
+	Frontier f = q.traceFrontier();
+	System.out.println("Parametric search: " + f.length() + " vertices; " + q.getSweepCnt() + " sweeps, " + q.getSetCnt() + " subsets, " + q.getVertexCnt() + " vertices");
+	return new AnnotatedFrontier(f, maxDepth, startTime);
+    }
+
+    /** Receives the intermediate results of {@link
+	#buildFrontierSweep(Test[], FrontierContext, int, boolean[],
+	SweepSink)} */
+    public static interface SweepSink {
+	/** Called as soon as the layer of the sets of the given size has
+	    been completed
+	    @param f The frontier of all policies with up to setSize
+	    sensors
+	*/
+	void accept(int setSize, AnnotatedFrontier f) throws DDException;
+    }
+
+    /** Builds the frontier, as {@link #buildFrontier(Test[],
+	FrontierContext, int, Vector)} does, and, on the way, also
+	reports the frontiers for some smaller depths. Since the build
+	proceeds layer by layer, as soon as the layer of the sets of
+	size k is done, the frontier of all policies that use up to k
+	sensors (i.e. the one that would be built with maxDepth=k) can be
+	obtained by combining the frontiers of that layer. In
+	particular, for a single sensor with n copies (as in
+	sensors/PBK/PBK-times1000.txt), this gives the frontiers for
+	all smaller numbers of copies in one run.
+
+	@param sweep If sweep[k] is true, the frontier for maxDepth=k
+	is passed to the sink as soon as it is available. The array may
+	be shorter than maxDepth+1.
+     */
+    public static AnnotatedFrontier 
+	buildFrontierSweep(Test t[], FrontierContext context, int maxDepth, 
+			   boolean sweep[], SweepSink sink) throws DDException {
+	return buildFrontier(t, context, maxDepth, null, null, -1, 0, new Sweep(sweep, sink));
+    }
+
+    /** The parameters of a {@link #buildFrontierSweep(Test[],
+	FrontierContext, int, boolean[], SweepSink) sweep} */
+    static private class Sweep {
+	final boolean depths[];
+	final SweepSink sink;
+	Sweep(boolean _depths[], SweepSink _sink) {
+	    depths = _depths;
+	    sink = _sink;
+	}
+	boolean wants(int setSize) {
+	    return setSize < depths.length && depths[setSize];
+	}
+    }
+
+    /** Builds the frontier for the sensors t[], reusing the frontiers of
+	the subsets of the sensors t[0] thru t[n-2] from a lattice file
+	saved by an earlier build (see {@link
+	Options#getSaveLatticeFile()}). Since the frontiers of the
+	subsets that don't include the new sensor t[n-1] are already
+	there, only the subsets that include it need to be processed;
+	this is roughly half of the work of a complete build, or less
+	if t[n-1] has several copies. The result is the same as that of
+	{@link #buildFrontier(Test[], FrontierContext, int, Vector)}.
+
+	<p>The lattice file must have been written by a build with the
+	same sensors t[0..n-2] (in the same order), and with the same
+	context. If it was built with a smaller maxDepth, the missing
+	layers are computed in full. If {@link
+	Options#getSaveLatticeFile()} is set, this build, too, saves the
+	lattice (for all n sensors), so that it can be extended with
+	another sensor later.
+
+	@param latticeFile The lattice file from the earlier build
+	@param t The sensors; the last one is the one being added
+    */
+    public static AnnotatedFrontier 
+	buildFrontierIncremental(File latticeFile, Test t[], FrontierContext context, 
+				 int maxDepth) throws DDException {
+	if (t.length < 2) throw new IllegalArgumentException("No sensors to reuse the lattice for");
+	if (!Options.signaturesOnly) throw new DDException("Lattice files can only be used with signaturesOnly=true");
+	File out = Options.getSaveLatticeFile();
+	if (out != null && out.getAbsoluteFile().equals(latticeFile.getAbsoluteFile())) {
+	    throw new DDException("The new lattice file can't overwrite the lattice file being read");
+	}
+	Test old[] = new Test[t.length-1];
+	System.arraycopy(t, 0, old, 0, old.length);
+	LatticeFile.Reader reader = new LatticeFile.Reader(latticeFile, old, -1, context);
+	try {
+	    return buildFrontier(t, context, maxDepth, null, reader, t.length-1, 0, null);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /** Builds the frontier for the sensors t[] after the cost or the ROC
+	curve of one of them, t[changed], has been modified, reusing the
+	frontiers of all subsets that don't include that sensor from a
+	lattice file saved by an earlier build (see {@link
+	Options#getSaveLatticeFile()}). Only the subsets including the
+	modified sensor are recomputed. This can also be used to study
+	the sensitivity of the frontier to the cost of a single sensor: a
+	lattice file saved once serves for any number of builds with
+	different costs of that sensor. The result is the same as that of
+	{@link #buildFrontier(Test[], FrontierContext, int, Vector)}.
+
+	<p>The lattice file must have been written by a build with the
+	same sensors (in the same order, and with the same
+	multiplicities), all of them, except t[changed], having the same
+	costs and ROC curves; and with the same context. If {@link
+	Options#getSaveLatticeFile()} is set, this build saves the updated
+	lattice as well.
+
+	@param latticeFile The lattice file from the earlier build
+	@param changed The index of the modified sensor in t[]
+    */
+    public static AnnotatedFrontier 
+	buildFrontierDelta(File latticeFile, Test t[], int changed, 
+			   FrontierContext context, int maxDepth) throws DDException {
+	if (changed < 0 || changed >= t.length) throw new IllegalArgumentException("No sensor no. " + changed);
+	if (!Options.signaturesOnly) throw new DDException("Lattice files can only be used with signaturesOnly=true");
+	File out = Options.getSaveLatticeFile();
+	if (out != null && out.getAbsoluteFile().equals(latticeFile.getAbsoluteFile())) {
+	    throw new DDException("The new lattice file can't overwrite the lattice file being read");
+	}
+	LatticeFile.Reader reader = new LatticeFile.Reader(latticeFile, t, changed, context);
+	try {
+	    return buildFrontier(t, context, maxDepth, null, reader, changed, 0, null);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /** The actual frontier building for {@link #buildFrontier(Test[],
+	FrontierContext, int, Vector)}.
+	@param reuse If not null, the frontiers stored in this lattice file
+	are used for all sets that do not include the "dirty" sensor
+	@param dirty The index of the sensor whose sets need to be computed,
+	if reuse is not null
+	@param deadline If positive, the time by which the computation
+	must end, as per {@link #buildFrontierByDeadline(Test[],
+	FrontierContext, int, long)}
+	@param sweep If not null, the depths for which the frontiers are
+	to be reported on the way
+     */
+    private static AnnotatedFrontier 
+	buildFrontier(Test t[], FrontierContext context, int maxDepth, 
+		      Vector<AnnotatedFrontier> others,
+		      LatticeFile.Reader reuse, int dirty,
+		      final long deadline, Sweep sweep) throws DDException {
 
 	final boolean fastPurge = true; //delete old frontiers fast to save mem
 
 	if (context.multiPi || context.pi != 0) throw new IllegalArgumentException("Wrong method for this context!");
 
 	int n = t.length;
-	int maxCnt[]  = new int[n];
-	for(int i=0; i<n; i++) maxCnt[i] = t[i].nCopies;
-
-	SensorSet.init( maxCnt);
+	// the lattice of subsets is owned by this computation
+	SensorLattice lattice = new SensorLattice(t);
+	System.out.println(lattice);
 	// max possible size
-	int maxSetSizeOrig = SensorSet.maxSetSize();
+	int maxSetSizeOrig = lattice.maxSetSize();
 	if (maxDepth < 0) maxDepth =maxSetSizeOrig;
 	// max allowed size
 	int maxSetSize = Math.min( maxSetSizeOrig, maxDepth);
@@ -394,95 +661,184 @@ public class Frontier extends FrontierInfo {
 			   ", VS method="+context.vs+" with eps="+context.eps);
 	Calendar startTime = Calendar.getInstance();
 
-	if (n >= Integer.SIZE-1) {
-	    throw new DDException( "Too many ("+n+") tests to combine. The limit is " + (Integer.SIZE-2));
-	}
-	// 2^n (or, generally, Product_i(maxCnt_i+1)), i.e. the number
-	// of different subsets of the set of all tests in t[]
-	int pow = SensorSet.getMaxPolicyCnt();
-
-	// Storing the frontier for each of the 2^n subsets
-	FrontierInfo frontiers[] = new FrontierInfo[pow];
-	
-	// start filling frontiers[]...
-	// Empty set:
-	frontiers[0] = new Frontier(context); // an empty (R-I) frontier
+	// The number of non-empty subsets of the set of all tests in
+	// t[] that will be processed. Only the subsets of the same size
+	// need to be indexed with an int (see layerSize()), so with a
+	// limited maxDepth any number of tests can be handled
+	long pow = lattice.countSets(maxSetSize);
 
-	if (maxDepth <= 0) return new AnnotatedFrontier(frontiers[0],
+	// Empty set: an empty (R-I) frontier
+	if (maxDepth <= 0) return new AnnotatedFrontier(new Frontier(context),
 							maxDepth,
 							startTime);
 
 	System.out.println("Max possible set size= "+maxSetSizeOrig+", max allowed set size = " +maxSetSize); 
 
-	// Sets of one test
+	// Storing the frontiers of the subsets, layer by layer
+	FrontierStore frontiers = FrontierStore.create(context);
+	LayerRunner runner = null;
+	LatticeFile.Writer saver = null;
+	try {
+
+	final FrontierContext[] contexts = {context};
+	final FrontierStore[] stores = {frontiers};
+	File checkpoint = Checkpoint.checkpointFile();
+	Checkpoint resumed = Checkpoint.resume(t, contexts, maxSetSize);
+	if (resumed != null && others != null) {
+	    throw new DDException("Resuming from a checkpoint is not supported when the frontiers of the subsets are requested");
+	}
+	File saveFile = Options.getSaveLatticeFile();
+	if (saveFile != null) {
+	    if (!Options.signaturesOnly) throw new DDException("Lattice files can only be used with signaturesOnly=true");
+	    if (resumed != null) throw new DDException("A resumed build can't save the lattice file, since it does not have the frontiers of the layers done before the checkpoint");
+	    saver = new LatticeFile.Writer(saveFile, t, context, maxSetSize);
+	}
+
+	final FrontierCache cache = FrontierCache.create(t, context);
+
 	int totalSavedCnt=0;
-	
+	int firstSetSize = 2;
+
+	if (resumed != null) {
+	    resumed.restore(stores);
+	    totalSavedCnt = resumed.totalSavedCnt;
+	    firstSetSize = resumed.layer + 1;
+	} else {
+	// Sets of one test
+	frontiers.startLayer(1, layerSize(lattice, 1));
 	for(int i=0; i<n; i++) {
 	    if (t[i].getNCopies()>0)  {
-		SensorSet ss = SensorSet.oneSensorSet(i);
-		frontiers[ss.intValue()] = new Frontier( t[i], context);
+		SensorSet ss = lattice.oneSensorSet(i);
+		frontiers.put(1, (int)lattice.rank(ss), new Frontier( t[i], context));
 		totalSavedCnt ++;
 		if (Options.verbosity>0) System.out.println("Saved frontier["+ss+"]");
 	    }
 	}
+	frontiers.endLayer(1);
 	System.out.println("Generated and saved "+n+" 1-sensor frontiers");
+	if (saver != null) saveLayer(saver, lattice, 1, frontiers);
+	}
 
-
-	for(int setSize = 2; setSize <= maxSetSize; setSize++) {
-	    int savedCnt = 0;
-
-	    SensorSet ss = SensorSet.firstSetOfSize(setSize);
-	    System.out.println("Set size=" + setSize + "; first frontier="+ss);
-	    do {
-		// ss represents a new set to fill
-		if (frontiers[ss.intValue()] != null) {
-		    throw new AssertionError("Frontier["+ss+"] is already filled?!");
+	// In the anytime mode: the frontier of all policies with up to
+	// doneDepth sensors, the area under it, and how much of that
+	// area has been added by the last completed layer
+	FrontierInfo doneHull = null;
+	int doneDepth = firstSetSize - 1;
+	double doneArea = 0, doneGain = 0;
+	long layerStart = System.currentTimeMillis(), layerMsec = -1;
+	if (deadline > 0) {
+	    doneHull = combineLayer(frontiers, lattice, doneDepth);
+	    doneArea = doneHull.areaUnderCurve();
+	    doneGain = doneArea - new Frontier(context).areaUnderCurve();
+	}
+	if (sweep != null && sweep.wants(doneDepth)) {
+	    sweep.sink.accept(doneDepth, new AnnotatedFrontier(combineLayer(frontiers, lattice, doneDepth), doneDepth, startTime));
+	}
+	final boolean[] expired = {false};
+
+	runner = new LayerRunner(context);
+	for(int setSize = firstSetSize; setSize <= maxSetSize; setSize++) {
+
+	    if (deadline > 0 && layerMsec >= 0) {
+		// Will the next layer be completed in time? Assume that
+		// the time is proportional to the number of
+		// (set, sensor) pairs to fuse
+		double ratio = (double)lattice.layerSize(setSize) * setSize /
+		    ((double)lattice.layerSize(setSize-1) * (setSize-1));
+		if (System.currentTimeMillis() + layerMsec * ratio > deadline) {
+		    System.out.println("Not enough time for layer " + setSize + ", which would take ca. " + (long)(layerMsec * ratio) + " msec");
+		    break;
 		}
+	    }
+	    layerStart = System.currentTimeMillis();
 
-		Vector<Frontier> v= new Vector<Frontier>();
-		for(int j=0;j<n;j++) {
-		    // ss\t[j]
-		    SensorSet ssMinusTj = ss.minusJ(j);
-		    if (ssMinusTj != null) {
-			// j indeed was in the set ptr, so let's
-			// combine t[j] with ptr\t[j]
-			if (frontiers[ssMinusTj.intValue()] == null) {
-			    throw new AssertionError("Frontier["+ssMinusTj+"] has not been filled, as expected!");
+	    SensorSet ss = lattice.firstSetOfSize(setSize);
+	    System.out.println("Set size=" + setSize + "; first frontier="+ss);
+	    final SensorSet[] layer = listLayer(ss, layerSize(lattice, setSize));
+	    frontiers.startLayer(setSize, layer.length);
+	    if (runner.isParallel()) System.out.println("Processing " + layer.length + " sets with " + Options.getThreads() + " threads");
+	    final FrontierInfo[] reused = (reuse == null) ? null :
+		reusedLayer(reuse, lattice, setSize, layer.length, dirty);
+	    // which sets' frontiers have been found in the cache
+	    final boolean[] cached = (cache == null) ? null : new boolean[layer.length];
+
+	    // Workers only read the frontiers of the previous layer;
+	    // everything else is done here, in the order of the layer
+	    final FrontierStore _frontiers = frontiers;
+	    final Test[] _t = t;
+	    LayerRunner.Job<FrontierInfo> job = new LayerRunner.Job<FrontierInfo>() {
+		public FrontierInfo compute(int k) {
+		    if (reused != null && reused[k] != null) return reused[k];
+		    if (cache != null) {
+			FrontierInfo f = cache.get(layer[k]);
+			if (f != null) {
+			    cached[k] = true;
+			    return f;
 			}
-			v.addElement( frontiers[ssMinusTj.intValue()].testFusion(t[j]));
 		    }
+		    return buildSubsetFrontier(layer[k], _t, _frontiers);
 		}
+	    };
+
+	    final int _setSize = setSize, _maxSetSize=maxSetSize, _maxDepth = maxDepth;
+	    final long _pow = pow;
+	    final int[] saved = {0, totalSavedCnt};
+	    final Calendar _startTime = startTime;
+	    final FrontierContext _context = context;
+	    final Vector<AnnotatedFrontier> _others = others;
+	    final LatticeFile.Writer _saver = saver;
+	    LayerRunner.Sink<FrontierInfo> sink = new LayerRunner.Sink<FrontierInfo>() {
+		public boolean accept(int k, FrontierInfo newHull) throws DDException {
+		    SensorSet ss = layer[k];
+		    // If signaturesOnly==true, this is already a
+		    // compact (columnar) frontier. The layer is listed
+		    // in the rank order, so k is the set's rank
+		    _frontiers.put(_setSize, k, newHull);
+		    // stream the record out right away
+		    if (_saver != null) _saver.write(ss, newHull);
+		    if (cache != null) {
+			if (cached[k]) {
+			    cache.hitCnt++;
+			} else {
+			    cache.missCnt++;
+			    cache.put(ss, newHull);
+			}
+		    }
 
-		Frontier newHull = combineFrontiers( v);
-		if (Options.paranoid && !newHull.validate()) throw new AssertionError("newHull no good");
-	    
-		// Compress data for storage, if requested
-		frontiers[ss.intValue()] = Options.signaturesOnly?
-		    new CompactFrontier(newHull, 2) : newHull;
-
-		if (others != null && setSize== maxSetSize-1) {
-		    // save the subset's frontier for a post-mortem
-		    others.addElement(new AnnotatedFrontier(newHull,
-							    maxDepth, startTime));
-		}
+		    if (_others != null && _setSize== _maxSetSize-1) {
+			// save the subset's frontier for a post-mortem
+			_others.addElement(new AnnotatedFrontier(newHull,
+								 _maxDepth, _startTime));
+		    }
 
-		savedCnt++;
-		totalSavedCnt ++;
-		if (Options.verbosity>0) System.out.println("Saved frontier["+ss+"]");
-		if (context.callback!=null) {
-		    if (!context.callback.callback("" + totalSavedCnt + " subsets out of " + pow)) {
-			// interruption
-			return null;
+		    saved[0]++;
+		    saved[1]++;
+		    if (Options.verbosity>0) System.out.println("Saved frontier["+ss+"]");
+		    if (_context.callback!=null) {
+			if (!_context.callback.callback("" + saved[1] + " subsets out of " + _pow)) {
+			    // interruption
+			    return false;
+			}
+		    }
+		    if (deadline > 0 && System.currentTimeMillis() > deadline) {
+			expired[0] = true;
+			return false;
 		    }
+		    return true;
 		}
-	    } while ( ss.transformToNextSetOfSameSize() ); 
+	    };
 
-	    System.out.println("Generated and saved "+savedCnt+" " + setSize + "-sensor frontiers");
+	    if (!runner.run(layer.length, job, sink)) {
+		if (!expired[0]) return null;
+		System.out.println("The deadline has passed while processing layer " + setSize);
+		break;
+	    }
+	    frontiers.endLayer(setSize);
+	    totalSavedCnt = saved[1];
+
+	    System.out.println("Generated and saved "+saved[0]+" " + setSize + "-sensor frontiers");
 	    if (fastPurge) { // delete frontiers we don't need anymore	      
-		ss = SensorSet.firstSetOfSize(setSize-1);
-		do {
-		    frontiers[ss.intValue()]=null;
-		} while ( ss.transformToNextSetOfSameSize() ); 
+		frontiers.dropLayer(setSize-1);
 
 		if (n>=10) {
 		    // Now is a good time to do garbage collection, since
@@ -492,33 +848,166 @@ public class Frontier extends FrontierInfo {
 		}
 
 	    }
+	    if (checkpoint != null) {
+		Checkpoint.write(checkpoint, t, contexts, setSize, totalSavedCnt, stores, layer.length);
+	    }
+	    if (deadline > 0) {
+		doneHull = combineLayer(frontiers, lattice, setSize);
+		double area = doneHull.areaUnderCurve();
+		doneGain = area - doneArea;
+		doneArea = area;
+		doneDepth = setSize;
+		layerMsec = System.currentTimeMillis() - layerStart;
+	    }
+	    if (sweep != null && sweep.wants(setSize)) {
+		sweep.sink.accept(setSize, new AnnotatedFrontier(combineLayer(frontiers, lattice, setSize), setSize, startTime));
+	    }
+	}
+	if (deadline > 0 && doneDepth < maxSetSize) {
+	    // the anytime mode has run out of time
+	    System.out.println("Returning the frontier for depth " + doneDepth + " instead of " + maxSetSize + "; the last layer has added " + doneGain + " to the area under it");
+	    AnnotatedFrontier af = new AnnotatedFrontier(doneHull, maxDepth, startTime);
+	    af.effectiveDepth = doneDepth;
+	    af.lastLayerGain = doneGain;
+	    return af;
 	}
 	System.out.println("Generated and saved "+totalSavedCnt+" frontiers of all sizes");
+	if (cache != null) System.out.println(cache);
+	if (saver != null) {
+	    saver.finish();
+	    System.out.println("Saved the frontiers of all subsets into " + saveFile);
+	}
 	// done all sets...
 	if (maxDepth >= maxSetSizeOrig) {
-	    int ptr = pow-1;
-	    if (frontiers[ptr]==null) throw new  AssertionError("The final result, Frontier["+new SensorSet(ptr)+"] has not been filled, as expected!");
-	    return new AnnotatedFrontier(frontiers[ptr], 
-					 maxDepth, startTime);
+	    // the set of all sensors is alone in its layer
+	    FrontierInfo f = frontiers.get(maxSetSizeOrig, 0);
+	    if (f==null) throw new  AssertionError("The final result, Frontier["+lattice.firstSetOfSize(maxSetSizeOrig)+"] has not been filled, as expected!");
+	    return new AnnotatedFrontier(f, maxDepth, startTime);
 	} else {
 	    // Since we have not finished building the frontier
 	    // including all possible efficient policies, we have to 
 	    // create a convex hull of "most complex allowed policies" now
-	    Vector<Frontier> v= new Vector<Frontier>();
+	    FrontierInfo newHull = combineLayer(frontiers, lattice, maxDepth);
 
-	    SensorSet ss = SensorSet.firstSetOfSize(maxDepth);
-	    do {
-		int ptr = ss.intValue();
-		if (frontiers[ptr] == null) {
-		    throw new AssertionError("Frontier["+ss+"] has not been filled, as expected!");
-		}
-		v.addElement(frontiers[ptr].getFrontier());
-	    } while ( ss.transformToNextSetOfSameSize() ); 
+	    return new AnnotatedFrontier(newHull, maxDepth, startTime);
+	}
+	} finally {
+	    if (runner != null) runner.shutdown();
+	    if (saver != null) saver.abort();
+	    frontiers.close();
+	}
+    }
 
-	    Frontier newHull = combineFrontiers(v);
+    /** Builds the convex hull of the frontiers of all sets of the given
+	size, i.e. the frontier of all policies that use up to setSize
+	sensors */
+    static private FrontierInfo combineLayer(FrontierStore frontiers, SensorLattice lattice, int setSize) {
+	Vector<FrontierInfo> v= new Vector<FrontierInfo>();
+
+	SensorSet ss = lattice.firstSetOfSize(setSize);
+	int rank = 0;
+	do {
+	    FrontierInfo f = frontiers.get(setSize, rank++);
+	    if (f == null) {
+		throw new AssertionError("Frontier["+ss+"] has not been filled, as expected!");
+	    }
+	    v.addElement(f);
+	} while ( ss.transformToNextSetOfSameSize() ); 
 
-	    return new AnnotatedFrontier(newHull, maxDepth, startTime);
+	return combineFrontiers(v);
+    }
+
+    /** Writes the frontiers of all sets of the given size from the store
+	into the lattice file. (This is only needed for the first layer;
+	the others are written set by set, as they are computed.) */
+    static private void saveLayer(LatticeFile.Writer saver, SensorLattice lattice, int setSize, FrontierStore frontiers) throws DDException {
+	SensorSet ss = lattice.firstSetOfSize(setSize);
+	int rank = 0;
+	do {
+	    saver.write(ss, frontiers.get(setSize, rank++));
+	} while ( ss.transformToNextSetOfSameSize() ); 
+    }
+
+    /** Reads the records of the sets of the given size from the lattice
+	file, and returns the frontiers of those of them that don't
+	include the dirty sensor, arranged by the sets' rank in the
+	lattice. The stored sets may be over fewer sensors than the
+	lattice (the sensors missing from the file being the last ones).
+	@param size The number of sets in the layer
+	@return An array with a non-null element for each set whose
+	frontier can be reused
+     */
+    static private FrontierInfo[] reusedLayer(LatticeFile.Reader reader, SensorLattice lattice, int setSize, int size, int dirty) throws DDException {
+	FrontierInfo[] reused = new FrontierInfo[size];
+	int cnt = 0;
+	for(; !reader.atEnd() && reader.size <= setSize; reader.advance()) {
+	    // skip the layers that have not been needed
+	    if (reader.size < setSize) continue;
+	    SensorSet ss = new SensorSet(lattice);
+	    System.arraycopy(reader.cnt, 0, ss.cnt, 0, reader.n);
+	    if (ss.cnt[dirty] > 0) continue;
+	    reused[(int)lattice.rank(ss)] = reader.frontier;
+	    cnt++;
+	}
+	System.out.println("Reusing " + cnt + " out of " + size + " " + setSize + "-sensor frontiers");
+	return reused;
+    }
+
+    /** Lists all sets of the same size, starting with the given one,
+	in the order in which {@link
+	SensorSet#transformToNextSetOfSameSize()} enumerates them. This
+	is also the order of their {@link SensorLattice#rank(SensorSet)
+	ranks}, so the k-th element of the array has rank k.
+	@param ss The first set of the layer. It is modified by this method.
+	@param size The number of sets in the layer
+     */
+    static private SensorSet[] listLayer(SensorSet ss, int size) {
+	SensorSet[] layer = new SensorSet[size];
+	int k = 0;
+	do {
+	    if (Options.paranoid && ss.lattice.rank(ss) != k) throw new AssertionError("Set "+ss+" has rank "+ss.lattice.rank(ss)+", expected "+k);
+	    layer[k++] = new SensorSet(ss);
+	} while ( ss.transformToNextSetOfSameSize() ); 
+	if (k != size) throw new AssertionError("Layer of size "+size+" has "+k+" sets?!");
+	return layer;
+    }
+
+    /** The number of sets in the s-th layer of the lattice, which must
+	be small enough to be indexed with an int */
+    static int layerSize(SensorLattice lattice, int s) throws DDException {
+	long size = lattice.layerSize(s);
+	if (size > Integer.MAX_VALUE) {
+	    throw new DDException("Too many ("+size+") sets of size "+s+" to process");
 	}
+	return (int)size;
+    }
+
+    /** Builds the frontier for the set ss, by fusing each test t[j]
+	present in the set with the frontier for the set ss\t[j], and
+	combining the results. This only reads the frontiers of smaller
+	sets, and therefore can be called for several sets of the same
+	size concurrently.
+     */
+    static FrontierInfo buildSubsetFrontier(SensorSet ss, Test t[], 
+						    FrontierStore frontiers) {
+	Vector<FrontierInfo> v= new Vector<FrontierInfo>();
+	for(int j=0;j<t.length;j++) {
+	    // ss\t[j]
+	    SensorSet ssMinusTj = ss.minusJ(j);
+	    if (ssMinusTj != null) {
+		// j indeed was in the set ptr, so let's
+		// combine t[j] with ptr\t[j]
+		FrontierInfo f = frontiers.get(ssMinusTj.getSize(), (int)ss.lattice.rank(ssMinusTj));
+		if (f == null) {
+		    throw new AssertionError("Frontier["+ssMinusTj+"] has not been filled, as expected!");
+		}
+		v.addElement( f.testFusion(t[j]));
+	    }
+	}
+
+	FrontierInfo newHull = combineFrontiers( v);
+	if (Options.paranoid && !newHull.validate()) throw new AssertionError("newHull no good");
+	return newHull;
     }
 
     /** Builds an <em>extremal surface</em>: set of extremal frontiers
@@ -574,12 +1063,11 @@ public class Frontier extends FrontierInfo {
 	}
 
 	int n = t.length;
-	int maxCnt[]  = new int[n];
-	for(int i=0; i<n; i++) maxCnt[i] = t[i].nCopies;
-
-	SensorSet.init( maxCnt);
+	// the lattice of subsets is owned by this computation
+	SensorLattice lattice = new SensorLattice(t);
+	System.out.println(lattice);
 	// max possible size
-	int maxSetSizeOrig = SensorSet.maxSetSize();
+	int maxSetSizeOrig = lattice.maxSetSize();
 	if (maxDepth < 0) maxDepth =maxSetSizeOrig;
 	// max allowed size
 	int maxSetSize = Math.min( maxSetSizeOrig, maxDepth);
@@ -589,133 +1077,118 @@ public class Frontier extends FrontierInfo {
 			   ", VS method="+context0.vs+" with eps=" + context0.eps);
 	Calendar startTime = Calendar.getInstance();
 
-	if (n >= Integer.SIZE-1) {
-	    throw new DDException( "Too many ("+n+") tests to combine. The limit is " + (Integer.SIZE-2));
-	}
-	// 2^n (or, generally, Product_i(maxCnt_i+1)), i.e. the number
-	// of different subsets of the set of all tests in t[]
-	int pow = SensorSet.getMaxPolicyCnt();
-
-	// Storing the frontier for each of the pi values, and for each of 2^n subsets
-	FrontierInfo xf[][] = new FrontierInfo[piList.length][];
-	for(int i=0; i<xf.length;i++) xf[i]= new FrontierInfo[pow];
+	// The number of non-empty subsets of the set of all tests in
+	// t[] that will be processed. Only the subsets of the same size
+	// need to be indexed with an int (see layerSize()), so with a
+	// limited maxDepth any number of tests can be handled
+	long pow = lattice.countSets(maxSetSize);
 
 	FrontierContext contexts[] = new  FrontierContext[ piList.length];
+	// the final results
+	FrontierInfo finals[] = new FrontierInfo[ piList.length];
 	for(int j=0; j<piList.length; j++) {
 	    contexts[j] = context0.changePiMulti(piList[j]);
-	    // start filling frontiers[]...
 	    // Empty set:
-	    xf[j][0] = new Frontier(contexts[j]); // an empty (R-I) frontier
+	    finals[j] = new Frontier(contexts[j]); // an empty (R-I) frontier
 	}
 
-	if (maxDepth <= 0) return annotate(xf, 0, maxDepth, startTime);
+	if (maxDepth <= 0) return annotate(finals, maxDepth, startTime);
 
 	System.out.println("Max possible set size= "+maxSetSizeOrig+", max allowed set size = " +maxSetSize); 
 
-	// Sets of one test
+	// Storing the frontier for each of the pi values, and for each of 2^n subsets
+	FrontierStore xf[] = new FrontierStore[piList.length];
+	LayerRunner runner = null;
+	try {
+	for(int j=0; j<piList.length; j++) xf[j] = FrontierStore.create(contexts[j]);
+
+	File checkpoint = Checkpoint.checkpointFile();
+	Checkpoint resumed = Checkpoint.resume(t, contexts, maxSetSize);
+
 	int totalSavedCnt=0;
+	int firstSetSize = 2;
 
+	if (resumed != null) {
+	    resumed.restore(xf);
+	    totalSavedCnt = resumed.totalSavedCnt;
+	    firstSetSize = resumed.layer + 1;
+	} else {
+	// Sets of one test
 	for(int j=0; j<piList.length; j++) {
 	    double pi = piList[j];
 
+	    xf[j].startLayer(1, layerSize(lattice, 1));
 	    for(int i=0; i<n; i++) {
-		SensorSet ss = SensorSet.oneSensorSet(i);
-		xf[j][ss.intValue()] = new Frontier( t[i], contexts[j]);
+		if (t[i].getNCopies()==0) continue;
+		SensorSet ss = lattice.oneSensorSet(i);
+		xf[j].put(1, (int)lattice.rank(ss), new Frontier( t[i], contexts[j]));
 		totalSavedCnt ++;
 		if (Options.verbosity>0) System.out.println("Saved frontier(pi="+pi+")["+ss+"]");
 	    }
+	    xf[j].endLayer(1);
 	    System.out.println("[pi="+piList[j]+"] Generated and saved "+n+" 1-sensor frontiers");
 	}
+	}
 
-	for(int setSize = 2; setSize <= maxSetSize; setSize++) {
-	    int savedCnt = 0;
+	runner = new LayerRunner(context0);
+	for(int setSize = firstSetSize; setSize <= maxSetSize; setSize++) {
 
-	    SensorSet ss = SensorSet.firstSetOfSize(setSize);
+	    SensorSet ss = lattice.firstSetOfSize(setSize);
 	    System.out.println("Set size=" + setSize + "; first frontier="+ss);
-	    do {
-		for(int jp=0; jp<piList.length; jp++) {		    
+	    final SensorSet[] layer = listLayer(ss, layerSize(lattice, setSize));
+	    for(FrontierStore frontiers: xf) frontiers.startLayer(setSize, layer.length);
+	    final int np = piList.length;
+	    if (runner.isParallel()) System.out.println("Processing " + layer.length + " sets x " + np + " pi values with " + Options.getThreads() + " threads");
+
+	    // Each (set, pi) pair is a separate job; the pi values of
+	    // the same set are listed consecutively, as in a serial run
+	    final double[] _piList = piList;
+	    final Test[] _t = t;
+	    final FrontierContext _context0 = context0;
+	    final FrontierContext[] _contexts = contexts;
+	    final FrontierStore[] _xf = xf;
+	    LayerRunner.Job<FrontierInfo> job = new LayerRunner.Job<FrontierInfo>() {
+		public FrontierInfo compute(int k) {
+		    return buildSubsetFrontierMultiPi(layer[k / np], k % np, 
+						      _piList, _t, _context0, 
+						      _contexts, _xf);
+		}
+	    };
+
+	    final int[] saved = {0, totalSavedCnt};
+	    final long _pow = pow;
+	    final int _setSize = setSize;
+	    LayerRunner.Sink<FrontierInfo> sink = new LayerRunner.Sink<FrontierInfo>() {
+		public boolean accept(int k, FrontierInfo newHull) throws DDException {
+		    SensorSet ss = layer[k / np];
+		    int jp = k % np;
 		    // ss represents a new set to fill
-		    if (xf[jp][ss.intValue()] != null) {
-			throw new AssertionError("Frontier["+jp+"]["+ss+"] is already filled?!");
-		    }
-		    double basePi = piList[jp];
-		    FrontierContext baseContext = contexts[jp];
-
-		    Vector<Frontier> v = new Vector<Frontier>();
-		    for(int j=0;j<n;j++) {
-			// ss\t[j]
-			SensorSet ssMinusTj = ss.minusJ(j);
-
-			// only proceed if j indeed was in the set ptr
-			if (ssMinusTj == null) continue;
-
-			// let's combine t[j] with ptr\t[j]
-			int subsetJ = ssMinusTj.intValue();
-			Test q = t[j];
-			// different frontiers (for different,
-			// adjusted, pi) need to be attached to each
-			// output
-			FrontierInfo[] subFrontiers = new FrontierInfo[q.getM()];
-			
-			for(int k=0; k<subFrontiers.length; k++) {
-			    double g = q.getG(k), b = q.getB(k);
-			    double adjPi = basePi*b /( basePi*b + g*(1-basePi));
-			    if (adjPi < 0 || adjPi> 1) throw new AssertionError("");
-
-			    FrontierContext adjContext = context0.changePiMulti(adjPi);
-
-			    // what's the closest value in piList?
-			    int jpAdj = 0;
-			    while(jpAdj+1< piList.length && piList[jpAdj+1]<=adjPi){
-				jpAdj ++;
-			    }			    
-
-			    if (xf[jpAdj][subsetJ] == null) {
-				throw new AssertionError("Frontier["+jpAdj+"]["+ssMinusTj+"] has not been filled, as expected!");
-			    }
-
-			    Frontier f = xf[jpAdj][subsetJ].realign(adjContext);
-			    if (Options.paranoid && !f.validate())  throw new AssertionError("frontier f no good!");
-
-			    if (jpAdj+1 < xf.length && adjPi > piList[jpAdj]) {
-				Frontier w = xf[jpAdj+1][subsetJ].realign(adjContext);
-				f.combineFrontiers(w);
-			    }
-			    subFrontiers[k] = f;
-
-			}
-
-			v.addElement(MultiPiFusion.testFusion(t[j], subFrontiers, baseContext));
-
-		    }
-
-
-		    Frontier newHull = combineFrontiers(v);
+		    if (newHull.context != _contexts[jp]) throw new AssertionError();
 
-		    // Compress data for storage, if requested
-		    xf[jp][ss.intValue()] = Options.signaturesOnly?
-			new CompactFrontier(newHull, 3) : newHull;
+		    // If signaturesOnly==true, this is already a
+		    // compact (columnar) frontier
+		    _xf[jp].put(_setSize, k / np, newHull);
 		    
-		    savedCnt++;
-		    totalSavedCnt ++;
-		    if (xf[jp][ss.intValue()].context != baseContext) throw new AssertionError();
-		    if (Options.verbosity>0) System.out.println("Saved frontier(pi["+jp+"]="+basePi+")["+ss+"]");
-		    if (context0.callback!=null) {
-			if (!context0.callback.callback("" + totalSavedCnt + " subsets out of " + pow*piList.length)) {
+		    saved[0]++;
+		    saved[1]++;
+		    if (Options.verbosity>0) System.out.println("Saved frontier(pi["+jp+"]="+_piList[jp]+")["+ss+"]");
+		    if (_context0.callback!=null) {
+			if (!_context0.callback.callback("" + saved[1] + " subsets out of " + _pow*np)) {
 			    // interruption
-			    return null;
+			    return false;
 			}
 		    }
+		    return true;
+		}
+	    };
 
-		} //-- loop over pi list
-	    } while ( ss.transformToNextSetOfSameSize() ); 
+	    if (!runner.run(layer.length * np, job, sink)) return null;
+	    for(FrontierStore frontiers: xf) frontiers.endLayer(setSize);
+	    totalSavedCnt = saved[1];
 
-	    System.out.println("[All pi] Generated and saved "+savedCnt+" " + setSize + "-sensor frontiers");
+	    System.out.println("[All pi] Generated and saved "+saved[0]+" " + setSize + "-sensor frontiers");
 	    if (fastPurge) { // delete frontiers we don't need anymore	      
-		ss = SensorSet.firstSetOfSize(setSize-1);
-		do {
-		    for(FrontierInfo[] frontiers: xf) frontiers[ss.intValue()]=null;
-		} while ( ss.transformToNextSetOfSameSize() ); 
+		for(FrontierStore frontiers: xf) frontiers.dropLayer(setSize-1);
 
 		if (n>=10) {
 		    // Now is a good time to do garbage collection, since
@@ -725,14 +1198,18 @@ public class Frontier extends FrontierInfo {
 		}
 
 	    }
+	    if (checkpoint != null) {
+		Checkpoint.write(checkpoint, t, contexts, setSize, totalSavedCnt, xf, layer.length);
+	    }
 	}
 	System.out.println("Generated and saved "+totalSavedCnt+" frontiers of all sizes");
 	
-	int destPtr = pow-1;
 	// done all sets...
 	if (maxDepth >= maxSetSizeOrig) {
 	    for(int jp=0; jp<piList.length; jp++) {
-		if (xf[jp][destPtr]==null) throw new  AssertionError("The final result, Frontier["+jp+"]["+new SensorSet(destPtr)+"] has not been filled, as expected!");
+		// the set of all sensors is alone in its layer
+		finals[jp] = xf[jp].get(maxSetSizeOrig, 0);
+		if (finals[jp]==null) throw new  AssertionError("The final result, Frontier["+jp+"]["+lattice.firstSetOfSize(maxSetSizeOrig)+"] has not been filled, as expected!");
 	    }
 	} else {
 	    // Since we have not finished building the frontier
@@ -740,36 +1217,106 @@ public class Frontier extends FrontierInfo {
 	    // create a convex hull of "most complex allowed policies" now (for each pi)
 	    for(int jp=0; jp<piList.length; jp++) {
 
-		Vector<Frontier> v = new Vector<Frontier>();
-		SensorSet ss = SensorSet.firstSetOfSize(maxDepth);
-		
+		Vector<FrontierInfo> v = new Vector<FrontierInfo>();
+		SensorSet ss = lattice.firstSetOfSize(maxDepth);
+		int rank = 0;
 		do {
-		    int ptr = ss.intValue();
-		    if (xf[jp][ptr] == null) {
+		    FrontierInfo f = xf[jp].get(maxDepth, rank++);
+		    if (f == null) {
 			throw new AssertionError("Frontier["+jp+"]["+ss+"] has not been filled, as expected!");
 		    }
-		    v.addElement(xf[jp][ptr].getFrontier());
+		    v.addElement(f);
 		} while ( ss.transformToNextSetOfSameSize() ); 
 		
-		Frontier newHull = combineFrontiers(v);
+		// use it as if it were the true final result
+		finals[jp] = combineFrontiers(v);
+	    }
+	}
+	return annotate(finals, maxDepth, startTime);
+	} finally {
+	    if (runner != null) runner.shutdown();
+	    for(FrontierStore frontiers: xf) {
+		if (frontiers != null) frontiers.close();
+	    }
+	}
+    }
+    
+
+    /** Builds the frontier for the set ss and the pi value
+	piList[jp], by fusing each test t[j] present in the set with the
+	frontiers for the set ss\t[j] (for the appropriately adjusted pi
+	values), and combining the results. This only reads the frontiers
+	of smaller sets, and therefore can be called for several sets (and
+	several pi values) concurrently.
+     */
+    static private FrontierInfo buildSubsetFrontierMultiPi(SensorSet ss, int jp,
+						       double piList[], 
+						       Test t[],
+						       FrontierContext context0,
+						       FrontierContext contexts[],
+						       FrontierStore xf[]) {
+	double basePi = piList[jp];
+	FrontierContext baseContext = contexts[jp];
+
+	Vector<FrontierInfo> v = new Vector<FrontierInfo>();
+	for(int j=0;j<t.length;j++) {
+	    // ss\t[j]
+	    SensorSet ssMinusTj = ss.minusJ(j);
+
+	    // only proceed if j indeed was in the set ptr
+	    if (ssMinusTj == null) continue;
+
+	    // let's combine t[j] with ptr\t[j]
+	    int layerJ = ssMinusTj.getSize(), subsetJ = (int)ss.lattice.rank(ssMinusTj);
+	    Test q = t[j];
+	    // different frontiers (for different,
+	    // adjusted, pi) need to be attached to each
+	    // output
+	    FrontierInfo[] subFrontiers = new FrontierInfo[q.getM()];
+	    
+	    for(int k=0; k<subFrontiers.length; k++) {
+		double g = q.getG(k), b = q.getB(k);
+		double adjPi = basePi*b /( basePi*b + g*(1-basePi));
+		if (adjPi < 0 || adjPi> 1) throw new AssertionError("");
+
+		FrontierContext adjContext = context0.changePiMulti(adjPi);
+
+		// what's the closest value in piList?
+		int jpAdj = 0;
+		while(jpAdj+1< piList.length && piList[jpAdj+1]<=adjPi){
+		    jpAdj ++;
+		}			    
+
+		FrontierInfo stored = xf[jpAdj].get(layerJ, subsetJ);
+		if (stored == null) {
+		    throw new AssertionError("Frontier["+jpAdj+"]["+ssMinusTj+"] has not been filled, as expected!");
+		}
 
+		FrontierInfo f = stored.realign(adjContext);
+		if (Options.paranoid && !f.validate())  throw new AssertionError("frontier f no good!");
+
+		if (jpAdj+1 < xf.length && adjPi > piList[jpAdj]) {
+		    FrontierInfo w = xf[jpAdj+1].get(layerJ, subsetJ).realign(adjContext);
+		    f = combineFrontiers(f, w);
+		}
+		subFrontiers[k] = f;
 
-		// store it at destPtr, as if it were the true final result
-		if (xf[jp][destPtr]!=null) throw new  AssertionError("The final result, Frontier["+jp+"]["+new SensorSet(destPtr)+"] has been filled already, unexpectedly!");
-		xf[jp][destPtr] = newHull;
 	    }
+
+	    v.addElement(MultiPiFusion.testFusion(t[j], subFrontiers, baseContext));
+
 	}
-	return annotate(xf, destPtr, maxDepth, startTime);
+
+	return combineFrontiers(v);
     }
-    
 
     /** For multi-pi */
-    static private AnnotatedFrontier[] annotate(FrontierInfo[][] xf, int ptr, int maxDepth, Calendar startTime) {
+    static private AnnotatedFrontier[] annotate(FrontierInfo[] xf, int maxDepth, Calendar startTime) {
 	AnnotatedFrontier af[] = new AnnotatedFrontier[xf.length];
 	Calendar endTime = Calendar.getInstance();
 	for(int i=0; i<af.length; i++) {
-	    af[i] = new AnnotatedFrontier(xf[i][ptr].getPolicies(), 
-					  xf[i][ptr].context,
+	    af[i] = new AnnotatedFrontier(xf[i].getPolicies(), 
+					  xf[i].context,
 					  maxDepth,
 					  startTime, endTime);
 	}
@@ -787,13 +1334,16 @@ public class Frontier extends FrontierInfo {
 	from this Frontier is to be attached to the i'th output
 	channel of q. Value used[i]=0 refers to RELEASE, used[i]=1 to
 	policy[0], and so on, with used[i]=policy.length meaning that
-	INSPECT is to be attached to the i'th channel of q.
+	INSPECT is to be attached to the i'th channel of q. The array may
+	be longer than the number of q's channels, in which case the extra
+	elements are ignored.
      */
 
     Policy makePolicy(Test q, int used[], double c, double e, double d) {
-	if (q.getM() != used.length) throw new AssertionError("Length mismatch:q.getM()=" + q.getM() +", used.length=" + used.length );
-	PolicySignature [] outputs= new PolicySignature[used.length];
-	for(int i=0; i< used.length; i++) {
+	final int m = q.getM();
+	if (m > used.length) throw new AssertionError("Length mismatch:q.getM()=" + m +", used.length=" + used.length );
+	PolicySignature [] outputs= new PolicySignature[m];
+	for(int i=0; i< m; i++) {
 	    outputs[i] = getPolicy(used[i]-1);
 	}
 	return new Policy(q, outputs, c, e, d);
@@ -886,63 +1436,89 @@ public class Frontier extends FrontierInfo {
 	if the defect exceeds this value, a warning will be printed
      */
     void selectNecessaryVerticesFromSortedList() {
+	FusionWorkspace ws = FusionWorkspace.get();
+	final int n = policies.length;
+	ws.ensureSelection(n);
+	for(int i=0; i<n; i++) {
+	    ws.selCost[i] = getPolicyCostPi(i);
+	    ws.selD[i] = policies[i].d;
+	}
+	int nkept=selectNecessaryVertices(ws.selCost, ws.selD, n, context, ws.selKept);
+	PolicySignature[] kept = new PolicySignature[nkept];
+	for(int i=0; i<nkept; i++) kept[i] = policies[ws.selKept[i]];
+	policies = kept;
+    }
 
-	PolicySignature[] kept = new PolicySignature[ policies.length ];
+    /** The primitive-array version of {@link
+	#selectNecessaryVerticesFromSortedList()}: the vertices are given
+	by their costs at the context's pi, and their detection rates.
+	Carries out exactly the same computations as the object version.
+
+	@param cost cost[i] is the cost (at context.pi) of the i-th vertex
+	@param d d[i] is the detection rate of the i-th vertex
+	@param n The number of vertices in the (sorted) list
+	@param kept Output: the indexes of the vertices that must be kept
+	are stored in kept[0..nkept-1]
+	@return nkept
+     */
+    static int selectNecessaryVertices(double cost[], double d[], int n,
+				       FrontierContext context, int kept[]) {
+	final double inspectCost = context.getInspectCostPi(),
+	    inspectD = context.INSPECT.d;
 	int nkept = 0;
 
+	for(int i=0; i<n; i++) {
+	    // RELEASE is (0,0) at any pi
+	    double prevC = 0, prevD = 0;
+	    if (nkept > 0) {
+		prevC = cost[kept[nkept-1]];
+		prevD = d[kept[nkept-1]];
+	    }
 
-	for(int i=0; i<policies.length; i++) {
-
-	    PolicySignature prev = (nkept==0) ? Policy.RELEASE: kept[nkept-1];
-
-	    if (i>0) {
-	        if (getPolicyCostPi(i) < getPolicyCostPi(i-1)) {
-		    throw new AssertionError("Vertices " + (i-1) + ", " + i +", not in order: " + getPolicyCostPi(i-1) +">" +  getPolicyCostPi(i));
-		}
+	    if (i>0 && cost[i] < cost[i-1]) {
+		throw new AssertionError("Vertices " + (i-1) + ", " + i +", not in order: " + cost[i-1] +">" +  cost[i]);
 	    }
-	   
 
-	    if (getPolicyCostPi(i) >= context.getInspectCostPi()) break; // this and the rest...
+	    if (cost[i] >= inspectCost) break; // this and the rest...
 
 	    // If EB1 is in effect, one can still skip vertices
 	    // satisfying VM1 with an adjusted eps
-	    double vmEps = (context.vs==VSMethod.EB1) ? context.eps * prev.d : 
-		(context.vs==VSMethod.VM2) ? context.eps / policies.length :
+	    double vmEps = (context.vs==VSMethod.EB1) ? context.eps * prevD : 
+		(context.vs==VSMethod.VM2) ? context.eps / n :
 		context.eps;
-	    
-	    if (policies[i].isWithinEps( prev, vmEps, context.pi)) {
+
+	    if (prevC-vmEps <= cost[i] && cost[i] <= prevC+vmEps &&
+		prevD-vmEps <= d[i] && d[i] <= prevD+vmEps) {
 		// skip as nearly redundant
 		continue;
 	    }
 
-	    if (Options.paranoid && getPolicyCostPi(i) < prev.getPolicyCost( context.pi)) throw new AssertionError("Vertex("+i+")=" + policies[i] + " is back of the stored vertex kept[" +(nkept-1)+ "]=" + prev);
-
+	    if (Options.paranoid && cost[i] < prevC) throw new AssertionError("Vertex("+i+"), cost=" + cost[i] + ", is back of the stored vertex kept[" +(nkept-1)+ "], cost=" + prevC + "; pi="+ context.pi);
 
-	    if (Options.paranoid && context.pi == 0 && policies[i].c < prev.c) {
-		throw new AssertionError("Vertex("+i+")=" + policies[i].c + ".c < kept[" +(nkept-1)+ "].c=" + prev.c + "; pi="+ context.pi +"; p("+i+")="+ policies[i] +", cost=" + getPolicyCostPi(i)+"; prev="+ prev+", cost=" +  prev.getPolicyCost( context.pi) );
-	    }
-	
-
-	    if (policies[i].isBelowRay( prev, context.INSPECT, context.pi)) {
+	    if (PolicySignature.compareToRay(cost[i], d[i], prevC, prevD, inspectCost, inspectD) < 0) {
 		// skip as redundant
 		continue;
 	    }
-	    
+
 	    while( nkept > 0 ) {
-		PolicySignature prev2= (nkept==1? Policy.RELEASE : kept[nkept-2]);
-		double d = kept[nkept-1].compareToRay( prev2, policies[i], context.pi);
+		int last = kept[nkept-1];
+		double prev2C = 0, prev2D = 0;
+		if (nkept > 1) {
+		    prev2C = cost[kept[nkept-2]];
+		    prev2D = d[kept[nkept-2]];
+		}
+		double dd = PolicySignature.compareToRay(cost[last], d[last], prev2C, prev2D, cost[i], d[i]);
 
 		// This test would be redundant in precise
 		// arithmetic... but in floating-point, sometimes it isn't
-		double d0 = kept[nkept-1].compareToRay( Policy.RELEASE, policies[i], context.pi);
+		double d0 = PolicySignature.compareToRay(cost[last], d[last], 0, 0, cost[i], d[i]);
 
-		if (d > 0 && d0 > 0) break;
+		if (dd > 0 && d0 > 0) break;
 		nkept --;
 	    }
-	    kept[nkept++] = policies[i];
+	    kept[nkept++] = i;
 	}
-	policies = trim(kept, nkept);
-
+	return nkept;
     }
 
 
@@ -1040,5 +1616,156 @@ public class Frontier extends FrontierInfo {
 	System.out.println("VM2: total excluded area=" + totalS);
     }
 
+    /** Applies {@link VSMethod#CAP the vertex cap} to this frontier, in
+	the same way as {@link #approximateCap(double[], double[], int[],
+	int, FrontierContext, FusionWorkspace)}, adding the gap it leaves
+	to {@link #capGap}.
+     */
+    synchronized void approximateCap() {
+	final int n = policies.length;
+	if (n <= context.vertexCap) return;
+	FusionWorkspace ws = FusionWorkspace.get();
+	ws.ensureSelection(n);
+	for(int i=0; i<n; i++) {
+	    ws.selCost[i] = getPolicyCostPi(i);
+	    ws.selD[i] = policies[i].d;
+	    ws.selKept[i] = i;
+	}
+	int nkept = approximateCap(ws.selCost, ws.selD, ws.selKept, n, context, ws);
+	PolicySignature[] kept = new PolicySignature[nkept];
+	for(int i=0; i<nkept; i++) kept[i] = policies[ws.selKept[i]];
+	policies = kept;
+	capGap += ws.capGap;
+    }
+
+    /** Replaces the list of vertices kept[0..n-1] (indexes into cost[]
+	and d[]) with its sublist of at most context.vertexCap vertices
+	under which the area is the largest, i.e. the one that loses the
+	least area. The points RELEASE and INSPECT at the ends are always
+	"kept".
+
+	<p>ALGORITHM: Let p(0),...,p(n+1) be the points, RELEASE, the
+	vertices and INSPECT, and let A(i,j) be the area between the
+	chord p(i)p(j) and the section of the frontier it replaces (which
+	is computed in O(1) from the prefix sums of the cross products
+	p(k) x p(k+1)). The smallest area lost by a path of s chords from
+	p(0) to p(j) is
+	<pre>
+	L(s,j) = min over i &lt; j of  L(s-1,i) + A(i,j),
+	</pre>
+	and we want L(K+1,n+1). Since the frontier is concave and
+	increasing, A satisfies the quadrangle inequality, A(a,c) +
+	A(b,d) &le; A(a,d) + A(b,c) for a &le; b &le; c &le; d; therefore
+	the best i does not decrease as j grows, and each row L(s,.)  can
+	be computed by divide and conquer in O(n log n), for O(K n log n)
+	in all.
+
+	<p>The largest vertical distance between the removed vertices and
+	the chords that replaced them is left in ws.capGap.
+
+	@return The new length of the list
+     */
+    static int approximateCap(double cost[], double d[], int kept[], int n,
+			      FrontierContext context, FusionWorkspace ws) {
+	ws.capGap = 0;
+	final int K = context.vertexCap;
+	if (n <= K) return n;
+	final int N = n+2, segments = K+1;
+	ws.ensureCap(N, segments);
+	double x[] = ws.capX, y[] = ws.capY, sum[] = ws.capS;
+	x[0] = y[0] = 0;
+	for(int i=0; i<n; i++) {
+	    x[i+1] = cost[kept[i]];
+	    y[i+1] = d[kept[i]];
+	}
+	x[n+1] = context.getInspectCostPi();
+	y[n+1] = context.INSPECT.d;
+	sum[0] = 0;
+	for(int i=0; i<n+1; i++) sum[i+1] = sum[i] + (x[i]*y[i+1] - x[i+1]*y[i]);
+
+	double prev[] = ws.capPrev, cur[] = ws.capCur;
+	for(int j=1; j<N; j++) {
+	    prev[j] = capArea(x, y, sum, 0, j);
+	    ws.capArg[1][j] = 0;
+	}
+	for(int s=2; s<segments; s++) {
+	    // p(j) must leave room for the remaining segments-s chords
+	    capRow(x, y, sum, prev, cur, ws.capArg[s], s, N-1-(segments-s), s-1, N-2);
+	    double t[] = prev;
+	    prev = cur;
+	    cur = t;
+	}
+	int best = -1;
+	double bestL = 0;
+	for(int i=segments-1; i<N-1; i++) {
+	    double z = prev[i] + capArea(x, y, sum, i, N-1);
+	    if (best < 0 || z < bestL) {
+		best = i;
+		bestL = z;
+	    }
+	}
+
+	// walk back from INSPECT, recording the chosen points in
+	// capArg[0]
+	int path[] = ws.capArg[0];
+	int j = N-1;
+	path[segments] = j;
+	path[segments-1] = best;
+	for(int s=segments-1; s>1; s--) {
+	    path[s-1] = ws.capArg[s][path[s]];
+	}
+	path[0] = 0;
+
+	double gap = 0;
+	for(int s=0; s<segments; s++) {
+	    int a = path[s], b = path[s+1];
+	    if (x[b] == x[a]) continue;
+	    for(int v=a+1; v<b; v++) {
+		double chord = y[a] + (y[b]-y[a]) * (x[v]-x[a])/(x[b]-x[a]);
+		gap = Math.max(gap, y[v] - chord);
+	    }
+	}
+	ws.capGap = gap;
+
+	// since path[] is increasing, kept[] is only overwritten after
+	// it has been read
+	for(int s=1; s<segments; s++) kept[s-1] = kept[path[s]-1];
+	if (Frontier.debug) System.out.println("CAP: reduced vertex count from " + n + " to "  + K + ", lost area " + bestL + ", vertical gap " + gap);
+	return K;
+    }
+
+    /** The area between the chord p(i)p(j) and the frontier */
+    private static double capArea(double x[], double y[], double sum[], int i, int j) {
+	// the frontier goes clockwise from p(i) to p(j), and the chord
+	// back to p(i)
+	double a = -(sum[j] - sum[i] + x[j]*y[i] - x[i]*y[j])/2;
+	return Math.max(a, 0);
+    }
+
+    /** Computes cur[j] = L(s,j) for jLo &le; j &le; jHi, given prev[i] =
+	L(s-1,i), knowing that the best i for these j lies between iLo
+	and iHi. See {@link #approximateCap(double[], double[], int[],
+	int, FrontierContext, FusionWorkspace)}.
+	@param arg Output: arg[j] = the best i for j
+     */
+    private static void capRow(double x[], double y[], double sum[], double prev[], double cur[], int arg[],
+			       int jLo, int jHi, int iLo, int iHi) {
+	if (jLo > jHi) return;
+	int j = (jLo + jHi)/2;
+	int best = -1;
+	double bestL = 0;
+	for(int i=iLo; i<=Math.min(iHi, j-1); i++) {
+	    double z = prev[i] + capArea(x, y, sum, i, j);
+	    if (best < 0 || z < bestL) {
+		best = i;
+		bestL = z;
+	    }
+	}
+	cur[j] = bestL;
+	arg[j] = best;
+	capRow(x, y, sum, prev, cur, arg, jLo, j-1, iLo, best);
+	capRow(x, y, sum, prev, cur, arg, j+1, jHi, best, iHi);
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package dd.engine;
+
+import java.io.*;
+import java.security.*;
+
+/** A persistent cache of subset frontiers, shared by all builds that use
+    the same cache directory (see {@link Options#getFrontierCacheDir()}).
+    Different configurations often share most of their sensors, and
+    thus have many subsets in common; the frontier of such a subset
+    only has to be computed once.
+
+    <p>A subset's frontier is stored under a key that is the SHA-1
+    digest of everything it depends on: the context (pi, the vertex
+    skipping method, eps and the vertex cap, and the costs of INSPECT,
+    which reflect E), and, for each sensor in the subset, in the order in which they
+    appear in the configuration, its cost, ROC curve, and the number
+    of copies of it in the subset. The sensors' names and the rest of
+    the configuration don't matter. (The order of the sensors does,
+    since vertex skipping may make the result depend slightly on the
+    order in which the sensors are fused; the frontier stored for a
+    key is therefore exactly the one a build would compute.)
+
+    <p>Each frontier is kept in a file of its own, named after the key
+    (in a subdirectory named after the key's first two characters),
+    in the format of {@link Checkpoint#writeFrontier(DataOutputStream,
+    FrontierInfo, boolean)}, so the cache can only be used with
+    signaturesOnly=true. The files are written under a temporary name
+    and then renamed, so that concurrent builds sharing the directory
+    never see incomplete files; a file that cannot be read is treated
+    as a miss.
+ */
+class FrontierCache {
+
+    /** "DDFC" */
+    private static final int MAGIC = 0x44444643;
+    private static final int VERSION = 1;
+
+    private final File dir;
+    private final FrontierContext context;
+    private final Test t[];
+    /** The digest of the context */
+    private final byte contextDigest[];
+    /** The digest of each sensor's cost and ROC curve */
+    private final byte sensorDigest[][];
+
+    /** How many lookups have succeeded and failed */
+    int hitCnt = 0, missCnt = 0;
+
+    /** Creates the cache requested by {@link
+	Options#getFrontierCacheDir()}, if any
+	@return The cache, or null if none has been requested
+     */
+    static FrontierCache create(Test t[], FrontierContext context) throws DDException {
+	File dir = Options.getFrontierCacheDir();
+	if (dir == null) return null;
+	if (!Options.signaturesOnly) throw new DDException("The frontier cache can only be used with signaturesOnly=true");
+	return new FrontierCache(dir, t, context);
+    }
+
+    FrontierCache(File _dir, Test _t[], FrontierContext _context) throws DDException {
+	dir = _dir;
+	t = _t;
+	context = _context;
+	if (!dir.isDirectory() && !dir.mkdirs()) throw new DDException("Cannot create the frontier cache directory " + dir);
+	try {
+	    ByteArrayOutputStream b = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(b);
+	    out.writeInt(VERSION);
+	    out.writeBoolean(context.multiPi);
+	    out.writeDouble(context.pi);
+	    out.writeUTF(context.vsDescription());
+	    out.writeDouble(context.eps);
+	    out.writeDouble(context.INSPECT.c);
+	    out.writeDouble(context.INSPECT.e);
+	    out.writeDouble(context.INSPECT.d);
+	    out.flush();
+	    contextDigest = digest().digest(b.toByteArray());
+
+	    sensorDigest = new byte[t.length][];
+	    for(int i=0; i<t.length; i++) {
+		b.reset();
+		Test q = t[i];
+		out.writeDouble(q.getCost());
+		out.writeInt(q.getM());
+		for(int k=0; k<q.getM(); k++) {
+		    out.writeDouble(q.sumBad(k));
+		    out.writeDouble(q.sumGood(k));
+		}
+		out.flush();
+		sensorDigest[i] = digest().digest(b.toByteArray());
+	    }
+	} catch(IOException ex) {
+	    // can't happen with a byte array
+	    throw new AssertionError(ex);
+	}
+    }
+
+    private static MessageDigest digest() {
+	try {
+	    return MessageDigest.getInstance("SHA-1");
+	} catch(NoSuchAlgorithmException ex) {
+	    // every Java platform is required to have it
+	    throw new AssertionError(ex);
+	}
+    }
+
+    /** The key of the set ss, as a hex string */
+    String key(SensorSet ss) {
+	MessageDigest md = digest();
+	md.update(contextDigest);
+	for(int i=0; i<t.length; i++) {
+	    int c = ss.cnt[i];
+	    if (c == 0) continue;
+	    md.update(sensorDigest[i]);
+	    md.update(new byte[] {(byte)(c>>>24), (byte)(c>>>16), (byte)(c>>>8), (byte)c});
+	}
+	StringBuffer s = new StringBuffer();
+	for(byte x: md.digest()) {
+	    s.append(Character.forDigit((x>>4) & 0xF, 16));
+	    s.append(Character.forDigit(x & 0xF, 16));
+	}
+	return s.toString();
+    }
+
+    private File file(String key) {
+	return new File(new File(dir, key.substring(0, 2)), key);
+    }
+
+    /** Looks up the frontier of the set ss. This may be called from
+	several threads.
+	@return The frontier, or null if it is not in the cache
+     */
+    FrontierInfo get(SensorSet ss) {
+	String key = key(ss);
+	File f = file(key);
+	if (!f.exists()) return null;
+	DataInputStream in = null;
+	try {
+	    in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+	    if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) return null;
+	    return Checkpoint.readFrontier(in, context);
+	} catch(IOException ex) {
+	    return null;
+	} finally {
+	    if (in != null) {
+		try {
+		    in.close();
+		} catch(IOException ex) {}
+	    }
+	}
+    }
+
+    /** Stores the frontier of the set ss */
+    void put(SensorSet ss, FrontierInfo frontier) throws DDException {
+	String key = key(ss);
+	File f = file(key);
+	File sub = f.getParentFile();
+	if (!sub.isDirectory() && !sub.mkdirs() && !sub.isDirectory()) {
+	    throw new DDException("Cannot create directory " + sub);
+	}
+	File tmp = null;
+	try {
+	    tmp = File.createTempFile(key, ".tmp", sub);
+	    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+	    try {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(key);
+		Checkpoint.writeFrontier(out, frontier, context.multiPi);
+	    } finally {
+		out.close();
+	    }
+	    // if another build has stored it in the meantime, that's the same frontier
+	    if (!tmp.renameTo(f) && !f.exists()) {
+		throw new IOException("cannot rename " + tmp + " to " + f);
+	    }
+	} catch(IOException ex) {
+	    throw new DDException("Error writing the frontier cache file " + f + ": " + ex.getMessage());
+	} finally {
+	    if (tmp != null && tmp.exists()) tmp.delete();
+	}
+    }
+
+    /** Reports the hits and misses */
+    public String toString() {
+	return "Frontier cache " + dir + ": " + hitCnt + " hits, " + missCnt + " misses";
+    }
+
+}
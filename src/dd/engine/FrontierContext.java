@@ -2,6 +2,7 @@ package dd.engine;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 
 /** A FrontierContext instance contains some information used in
@@ -19,6 +20,9 @@ final public class FrontierContext {
     public final VSMethod vs;
     /** The "epsilon" parameter for vertex-skipping */
     public final double eps;
+    /** The largest number of vertices in a frontier, with {@link
+	VSMethod#CAP} */
+    public final int vertexCap;
     /** The frontier, as computed, was meant to be an extreme frontier for 
 	this value of pi. */
     public final double pi;
@@ -46,14 +50,37 @@ final public class FrontierContext {
 	return callback;
     }
 
-    public FrontierContext( boolean _multiPi, double _pi, VSMethod _vs, double _eps) {
+    /** If not null, the frontier finder will use this executor to
+	process subsets of the same size in parallel. Otherwise, a
+	thread pool is created for each computation, as per {@link
+	Options#getThreads()}.
+     */
+    ExecutorService executor = null;
+
+    public void setExecutor(ExecutorService _executor) {
+	executor = _executor;
+    }
+
+    public ExecutorService getExecutor() {
+	return executor;
+    }
+
+    public FrontierContext( boolean _multiPi, double _pi, VSMethod _vs, double _eps, int _vertexCap) {
+	if (_vs == VSMethod.CAP && _vertexCap < 1) throw new IllegalArgumentException("The vertex cap must be positive, not " + _vertexCap);
 	multiPi = _multiPi;
 	pi = _pi;
 	vs = _vs;
 	eps = _eps;
+	vertexCap = _vertexCap;
 	INSPECT = Policy.INSPECT;
     }
 
+    /** Creates a context whose vertex cap (which only matters with
+	{@link VSMethod#CAP}) is {@link Options#getVertexCap()} */
+    public FrontierContext( boolean _multiPi, double _pi, VSMethod _vs, double _eps) {
+	this(_multiPi, _pi, _vs, _eps, Options.getVertexCap());
+    }
+
     /** Creates a context with the specified vertex-skipping method and eps,
 	for zero-pi model (i.e., very low percentage of "bad" objects in the 
 	input stream).
@@ -78,11 +105,18 @@ final public class FrontierContext {
     /** Creates a new context, based on the current one, but with a
      * different pi */
     public FrontierContext changePi(double _pi) {
-	return new  FrontierContext(multiPi, _pi, vs, eps);
+	return new  FrontierContext(multiPi, _pi, vs, eps, vertexCap);
     }
 
     FrontierContext changePiMulti(double _pi) {
-	return new  FrontierContext(true, _pi, vs, eps);
+	return new  FrontierContext(true, _pi, vs, eps, vertexCap);
+    }
+
+    /** The name of the vertex-skipping method, with the vertex cap in
+	the case of {@link VSMethod#CAP} (e.g. "CAP:100"), as recorded in
+	checkpoint and cache files */
+    String vsDescription() {
+	return (vs == VSMethod.CAP) ? vs.name() + ":" + vertexCap : vs.name();
     }
 
 
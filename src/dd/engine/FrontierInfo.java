@@ -62,6 +62,17 @@ abstract public class FrontierInfo {
 	frontier was constructed.
     */
     public FrontierContext context;
+
+    /** A bound on how far (in the detection rate, at any cost) this
+	frontier may lie below the one that would have been built
+	without {@link VSMethod#CAP the vertex cap}. Test fusion does
+	not increase it, as the detection rate of a fused policy is an
+	average of those of the policies attached to the channels;
+	merging frontiers takes the largest of the inputs' gaps, and
+	adds the one left by the cap itself. (The skipping of vertices
+	that are within eps of each other is not accounted for.)
+    */
+    double capGap = 0;
     
     /** Accesses the value of pi from the {@link FrontierContext} */
     public double getPi() { return context.pi; }
@@ -95,19 +106,21 @@ abstract public class FrontierInfo {
     /** Computes the total cost of the policy that has device q in front, and
 	the policy This.policies[ used[i]-1 ] attached to the i-th channel of
 	q. (So, used[i]=0 means: use the trivial zero-cost R policy on the
-	i-th channel)
+	i-th channel). The cost on good items, the cost on bad items, and
+	the detection rate of the policy are stored in c[at], e[at], d[at].
 
+	@param m The number of q's channels; only used[0..m-1] are looked at
     */
-    PolicySignature combiCost(Test q, int used[]) {
+    void combiCost(Test q, int used[], int m, double cc[], double ee[], double dd[], int at) {
 	double c= q.getCost(),  //cost of running test q
 	    e = context.multiPi? Double.NaN: q.getCost(),
 	    d=	 0;
 	int k=0;
 
-	while( k <  used.length) {
+	while( k <  m) {
 	    if (k>0 && used[k] > used[k-1]) throw new AssertionError("used["+k+"] > used["+(k-1)+"]");
 	    int i=k;
-	    while( i<used.length && used[i]== used[k]) i++;
+	    while( i<m && used[i]== used[k]) i++;
 
 	    if (used[k] > 0) {
 		double gr = q.getGRange(k, i-1),  br =  q.getBRange(k, i-1);
@@ -117,7 +130,9 @@ abstract public class FrontierInfo {
 	    }
 	    k = i;
 	}
-	return new PolicySignature(c,e,d);
+	cc[at] = c;
+	ee[at] = e;
+	dd[at] = d;
     }
 
     double combiDetectionRate(Test q, int used[]) {
@@ -149,7 +164,17 @@ abstract public class FrontierInfo {
 	This method is only used at pi=0. (There is a different one in
 	MultiPi).
     */
-    Frontier testFusion(Test q) {
+    FrontierInfo testFusion(Test q) {
+	return testFusion(q, !Options.signaturesOnly);
+    }
+
+    /** Same as {@link #testFusion(Test)}
+	@param trees If true, policy trees are built (which requires this
+	to be a {@link Frontier} with trees); otherwise, only the
+	signatures are computed, and the result is a {@link
+	ColumnFrontier}, regardless of Options.signaturesOnly
+     */
+    FrontierInfo testFusion(Test q, boolean trees) {
 	// How many channels in Q? 
 	int m = q.getM();
 
@@ -157,30 +182,19 @@ abstract public class FrontierInfo {
 	// non-trivial policies plus 1.
 	final int fSegCount = length() + 1;
 
-	double qCost = q.getCost();
-
-	final int mv = m*fSegCount; 
-	int used[] = new int[m];
-
-	// we start with the implicit lowest-cost (0,0) policy, and keep
-	// adding "Inspect" to the channels in the order of the decreasing 
-	// .... ratio
-	PolicySignature lastPolicy = Policy.RELEASE;
+	// All temporary arrays come from this thread's workspace
+	FusionWorkspace ws = FusionWorkspace.get();
+	ws.ensureChannels(m);
+	ws.ensureSegments(fSegCount);
+	int used[] = ws.used;
 
 	//----------------------------------------------------
 	// Order the m*fSegCount segments in the order of increasing 
 	// (b[i]/g[i]) * (delta(DetectionRate,j)/delta(Cost,j)).
-	//
-	// {iOrderd[k]=i, jOrdered[k]=j} means: the k-th segment of the
-	// compound-device efficient frontier uses the j-th segment of the
-	// EF of the device attached to the i-th channel of the front-end
-	// device q. Both i and j are 0-based.
-	int iOrdered[] = new int[mv]; 
-	int jOrdered[] = new int[mv]; 
-	boolean skippable[] = new boolean[mv]; 
-
-	double h[] = new double[m];
-	double invh[] = new double[m];
+	// All channels share the same sequence of segments (that of
+	// this frontier), scaled by the channel's b/g ratio.
+	double h[] = ws.h;
+	double invh[] = ws.invh;
 	for(int i=0; i<m; i++) {
 	    h[i] = q.getB(i)/q.getG(i);
 	    invh[i] = q.getG(i)/q.getB(i);
@@ -190,60 +204,29 @@ abstract public class FrontierInfo {
  	// their inverse, for all policies in f. One of them may be
 	// infinity (on vertical/horizontal sections), but at least the
 	// other one will be a regular number
-	double r[] = new double[fSegCount];
-	double invr[] = new double[fSegCount];
+	double r[] = ws.r;
+	double invr[] = ws.invr;
 	for(int j=0; j<fSegCount; j++) {
 	    double dd=getIncrementInDetectionRate(j), dc=getIncrementInCost0(j);
 	    r[j]=dd/dc;
 	    invr[j]=dc/dd;
 	}
-	
-	// used to skip some vertices that sit on virtually straight-line
-	// sections of the frontier
-	final double ratioEps = 1e-14;
-	double lastRatio = 0, lastInvRatio=0;
-
-	for(int pos=0; pos< mv; pos++) {
-	    // find the not-yet-"used" segment with the largest g/b ratio
-	    double maxRatio = 0;
-	    int iFound = -1;
-	    for(int i=0; i<m; i++) {
-		if (used[i] == fSegCount) {
-		    continue;
-		} 
-		double ratio = h[i]*r[used[i]];
-		if (iFound < 0 || ratio > maxRatio) {
-		    iFound = i;
-		    maxRatio = ratio;
-		} 
-	    }
-	    
-	    if (iFound < 0) throw new AssertionError("max not found?!");
-	    double invMaxRatio = invh[iFound] * invr[ used[iFound]];
-
-	    // Was the current max (computationally) same as the
-	    // previous one?  We assume equality if either
-	    // |r1-r2|<eps, or |(1/r1)-(1/r2)|<eps, where eps=ratioEps
-	    // is a special very tight tolerance value
-	    
-	    boolean skipPrev = (pos > 0) &&  
-		((lastRatio <= 0.5)?
-		 (Math.abs(maxRatio-lastRatio) <ratioEps) :
-		 (Math.abs( invMaxRatio - lastInvRatio) < ratioEps));
-
-	    if (skipPrev) {
-		skippable[pos-1] = true;
-	    } else {
-		lastRatio = maxRatio;
-		lastInvRatio = invMaxRatio;
-	    }
 
-	    // record pair (i, used[i])
-	    iOrdered[pos] = iFound;
-	    jOrdered[pos] = used[iFound]++;
-	    skippable[pos] = false;
+	double rr[][] = ws.rr, invrr[][] = ws.invrr;
+	int segCount[] = ws.segCount;
+	for(int i=0; i<m; i++) {
+	    rr[i] = r;
+	    invrr[i] = invr;
+	    segCount[i] = fSegCount;
 	}
 
+	SegmentOrder order = ws.order;
+	order.order(m, segCount, h, invh, rr, invrr);
+	final int mv = order.mv;
+	int iOrdered[] = order.iOrdered; 
+	int jOrdered[] = order.jOrdered; 
+	boolean skippable[] = order.skippable; 
+
 	if (Frontier.debug) for(int pos=0; pos< mv; pos++) {
 	    System.out.println("Ordered["+pos+"]=("+iOrdered[pos] + " " + 
 			       jOrdered[pos] + " " + 
@@ -253,9 +236,13 @@ abstract public class FrontierInfo {
 
 
 	//----------------------------------------------------
+	// The candidate vertices are accumulated as (c,e,d) triples in
+	// the workspace's buffers; a PolicySignature object is only
+	// created for the vertices that make it into the frontier. (If
+	// signaturesOnly==false, we need a policy tree for each
+	// candidate vertex, so they are kept in ws.trees[])
 	for(int i=0; i<m; i++) used[i] = 0;
-
-	PolicySignature pp[] = new PolicySignature[mv];
+	final double inspectCost = context.getInspectCostPi();
 	int pCnt =0;
 
 	for(int k=0; k < mv;k++) {
@@ -268,39 +255,38 @@ abstract public class FrontierInfo {
 	    // construction
 	    if (skippable[k]) continue; 
 
-	     PolicySignature z = combiCost(q, used);
-	    if (z.c >= context.getInspectCostPi()) break; // reject this and the rest
-	    //double delta = combiDetectionRate(q, used);
-	    //if (delta!=ced[2]) throw new AssertionError("delta="+delta+", ced[2]=" + ced[2]);
-
-	    // FIXME: inelegant, but should work: if signaturesOnly==false,
-	    // we store regular Frontiers
-	    if (!Options.signaturesOnly) {
-		z = ((Frontier)this).makePolicy(q, used, z.c, z.e, z.d);
-	    }
+	    ws.ensureOutput(pCnt+1);
+	    combiCost(q, used, m, ws.c, ws.e, ws.d, pCnt);
+	    double zc = ws.c[pCnt], zd = ws.d[pCnt];
+	    if (zc >= inspectCost) break; // reject this and the rest
 
 	    if (pCnt > 0) {
 		// cost equality may result from a vertical (first) segment
 		// of a ROC curve; (small) backwardation from a rounding error
-		if ( z.c <= pp[pCnt-1].c ) {
+		double lastC = ws.c[pCnt-1];
+		if ( zc <= lastC ) {
 
-		    if ( pp[pCnt-1].c - z.c > 1e-8) {
-			throw new AssertionError("Backwardation in fusion from " +  pp[pCnt-1] + " to " + z);
+		    if ( lastC - zc > 1e-8) {
+			throw new AssertionError("Backwardation in fusion from (" +  lastC + " " + ws.d[pCnt-1] + ") to (" + zc + " " + zd + ")");
 		    }
 
-		    if ( z.d >  pp[pCnt-1].d) { // replace last element
-			pp[pCnt-1] = z;
-			continue;
-		    } else {  // skip
-			continue;
+		    if ( zd >  ws.d[pCnt-1]) { // replace last element
+			ws.c[pCnt-1] = zc;
+			ws.e[pCnt-1] = ws.e[pCnt];
+			ws.d[pCnt-1] = zd;
+			if (trees) ws.trees[pCnt-1] = ((Frontier)this).makePolicy(q, used, zc, ws.e[pCnt], zd);
 		    }
+		    continue;
 		} 
 	    }
-	    pp[pCnt++] = z;
+	    // FIXME: inelegant, but should work: if signaturesOnly==false,
+	    // we store regular Frontiers
+	    if (trees) ws.trees[pCnt] = ((Frontier)this).makePolicy(q, used, zc, ws.e[pCnt], zd);
+	    pCnt++;
 	}
 
-	Frontier ff = new Frontier(pp, context, pCnt);
-	ff.selectNecessaryVerticesFromSortedList(); //triangleEps);
+	FrontierInfo ff = fusionResult(ws, pCnt, trees, context);
+	ff.capGap = capGap;
 	
 	if (Frontier.debug) {
 	    System.out.println("TestFusion: ======================");
@@ -312,6 +298,29 @@ abstract public class FrontierInfo {
 	return ff;
     }
 
+    /** Selects the necessary vertices among the pCnt candidates
+	accumulated by test fusion in the workspace, and makes a frontier
+	out of them. The workspace's policy references are released.
+
+	@param trees If true, ws.trees[] contains the actual policies
+	for the candidate vertices, and a Frontier is returned;
+	otherwise, only their signatures are available, and a
+	ColumnFrontier is returned.
+     */
+    static FrontierInfo fusionResult(FusionWorkspace ws, int pCnt, boolean trees, 
+				     FrontierContext context) {
+	for(int i=0; i<pCnt; i++) {
+	    ws.cost[i] = PolicySignature.getPolicyCost(ws.c[i], ws.e[i], context.pi);
+	}
+	int nkept = Frontier.selectNecessaryVertices(ws.cost, ws.d, pCnt, context, ws.kept);
+	if (!trees) return ColumnFrontier.fromWorkspace(ws, ws.kept, nkept, context);
+
+	PolicySignature pp[] = new PolicySignature[nkept];
+	for(int i=0; i<nkept; i++) pp[i] = ws.trees[ws.kept[i]];
+	Arrays.fill(ws.trees, 0, pCnt, null);
+	return new Frontier(pp, context);
+    }
+
     /** Checks that this sequence of policies does indeed describe an
 	extreme frontier in the (Cost(Pi), DetectionRate) plane
 	@return true if it is indeed an extreme frontier
@@ -377,7 +386,7 @@ abstract public class FrontierInfo {
 	experiments, to convert a frontier obtained for one value of
 	pi to a proper frontier for another value.
      */
-    Frontier realign(FrontierContext newContext) {
+    FrontierInfo realign(FrontierContext newContext) {
 	PolicySignature[] po = getPoliciesCopy();
 
 	// sort with respect to cost for this pi
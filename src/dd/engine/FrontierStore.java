@@ -0,0 +1,67 @@
+package dd.engine;
+
+/** Keeps the frontiers of the subsets of the sensor set while the
+    frontier-building dynamic programming algorithm runs. The
+    algorithm proceeds layer by layer (a layer being all subsets of
+    the same size); the frontiers of a layer are all stored (in the
+    calling thread) before any of them is read, and a layer is
+    dropped as soon as the next one is complete. Within a layer,
+    frontiers are identified by the {@link SensorLattice#rank(SensorSet)
+    rank} of their set; thus the storage is sized by the layers that
+    are actually live, rather than by the size of the entire lattice.
+
+    <p>Two implementations are available, selected via {@link
+    Options#getFrontierStore()}: arrays of ordinary Java objects,
+    and a file-backed one (see {@link MappedFrontierStore}), which
+    allows layers larger than the available memory to be spilled to
+    a local disk.
+ */
+abstract class FrontierStore {
+
+    /** Prepares to receive the frontiers of a layer.
+	@param layer The size of the sets in the layer
+	@param size The number of sets in the layer
+     */
+    abstract void startLayer(int layer, int size) throws DDException;
+
+    /** Stores the frontier for a set. This is only called in the
+	thread that runs the build.
+	@param layer The size of the set
+	@param rank The set's rank within the layer
+     */
+    abstract void put(int layer, int rank, FrontierInfo f) throws DDException;
+
+    /** Retrieves the frontier for a set, from a layer that has already
+	been completed. This may be called from several threads at once.
+	@return The frontier, or null if none has been stored
+     */
+    abstract FrontierInfo get(int layer, int rank);
+
+    /** Called once all frontiers of the layer have been stored; after
+	that, they can be read */
+    void endLayer(int layer) throws DDException {}
+
+    /** Discards all frontiers of the layer */
+    abstract void dropLayer(int layer);
+
+    /** Releases all resources */
+    void close() {}
+
+    /** Creates the kind of store requested by {@link
+	Options#getFrontierStore()}.
+	@param context The context in which all stored frontiers have been
+	built
+     */
+    static FrontierStore create(FrontierContext context) throws DDException {
+	String s = Options.getFrontierStore();
+	if (s.equals("heap")) {
+	    return new HeapFrontierStore();
+	} else if (s.equals("mmap")) {
+	    if (!Options.signaturesOnly) throw new DDException("Frontier store '"+s+"' can only be used with signaturesOnly=true");
+	    return new MappedFrontierStore(context, Options.getSpillDir());
+	} else {
+	    throw new DDException("Unknown frontier store '"+s+"'; use 'heap' or 'mmap'");
+	}
+    }
+
+}
@@ -0,0 +1,208 @@
+package dd.engine;
+
+/** Scratch arrays used in test fusion (see {@link
+    FrontierInfo#testFusion(Test)} and {@link MultiPiFusion#testFusion(Test,
+    FrontierInfo[], FrontierContext)}), in merging and realigning
+    columnar frontiers (see {@link ColumnFrontier}), and in vertex
+    selection. Test fusion is carried out for every (subset, sensor)
+    pair of the lattice, i.e. a very large number of times; allocating
+    all the temporary arrays anew on each call made the memory
+    allocator and the garbage collector a major consumer of the
+    running time.
+
+    <p>Each thread has its own workspace, obtained via {@link
+    #get()}. The arrays are grown on demand, and never shrink; so
+    after the first few calls no more allocation takes place. The
+    content of the arrays is only meaningful during a single call of
+    the method using them; in particular, a method that uses one
+    group of arrays must not call another method that uses the same
+    group.
+ */
+final class FusionWorkspace {
+
+    private static final ThreadLocal<FusionWorkspace> local =
+	new ThreadLocal<FusionWorkspace>() {
+	protected FusionWorkspace initialValue() {
+	    return new FusionWorkspace();
+	}
+    };
+
+    /** Returns the current thread's workspace */
+    static FusionWorkspace get() {
+	return local.get();
+    }
+
+    private FusionWorkspace() {}
+
+    /** The segment-ordering engine, with its own reusable arrays */
+    final SegmentOrder order = new SegmentOrder();
+
+    //---- Per-channel arrays (m elements)
+
+    /** used[i] = how many segments of the i-th channel are in use */
+    int used[] = new int[0];
+    /** per-channel b/g ratios, and their inverses */
+    double h[] = new double[0], invh[] = new double[0];
+    /** slope rows, one per channel */
+    double rr[][] = new double[0][], invrr[][] = new double[0][];
+    int segCount[] = new int[0];
+
+    //---- Per-segment arrays
+
+    /** The slopes of a single frontier (shared by all channels,
+	in FrontierInfo.testFusion) */
+    double r[] = new double[0], invr[] = new double[0];
+    /** Per-channel slope rows, in MultiPiFusion.testFusion. Unlike rr[],
+	these rows belong to the workspace */
+    private double mr[][] = new double[0][], minvr[][] = new double[0][];
+
+    //---- Output of test fusion: the (c, e, d) triples of the candidate
+    //---- vertices, their costs at the context's pi, and (when full
+    //---- policies are built) the policies themselves
+
+    double c[] = new double[0], e[] = new double[0], d[] = new double[0],
+	cost[] = new double[0];
+    PolicySignature trees[] = new PolicySignature[0];
+    /** Indexes of the vertices kept by vertex selection */
+    int kept[] = new int[0];
+
+    //---- Merging frontiers (ColumnFrontier.combine()); the merged
+    //---- vertices go into the output arrays above
+
+    /** The heads of the input frontiers, keyed on cost */
+    final IndexHeap heap = new IndexHeap(0);
+    /** pos[k] = the current vertex of the k-th input; tied[] = inputs
+	whose current vertices have the same cost */
+    int pos[] = new int[0], tied[] = new int[0];
+
+    //---- Sorting vertices (ColumnFrontier.realign())
+
+    int sorted[] = new int[0], sortTmp[] = new int[0];
+
+    //---- Scratch arrays for Frontier.selectNecessaryVerticesFromSortedList()
+
+    double selCost[] = new double[0], selD[] = new double[0];
+    int selKept[] = new int[0];
+
+    //---- The vertex cap (Frontier.approximateCap())
+
+    /** The points (RELEASE, the vertices, INSPECT), and the prefix sums
+	of their cross products */
+    double capX[] = new double[0], capY[] = new double[0], capS[] = new double[0];
+    /** The smallest areas lost by paths of s-1 and s chords */
+    double capPrev[] = new double[0], capCur[] = new double[0];
+    /** capArg[s][j] = the point before p(j) on the best path of s
+	chords ending at p(j); capArg[0] receives the chosen path */
+    int capArg[][] = new int[0][];
+    /** The vertical gap left by the last call of approximateCap() */
+    double capGap = 0;
+
+    /** Makes sure that the per-channel arrays can hold m elements */
+    void ensureChannels(int m) {
+	if (used.length < m) {
+	    used = new int[m];
+	    h = new double[m];
+	    invh = new double[m];
+	    rr = new double[m][];
+	    invrr = new double[m][];
+	    segCount = new int[m];
+	}
+    }
+
+    /** Makes sure that r[] and invr[] can hold n elements */
+    void ensureSegments(int n) {
+	if (r.length < n) {
+	    r = new double[n];
+	    invr = new double[n];
+	}
+    }
+
+    /** Makes sure that the k-th multi-pi slope row exists and can hold n
+	elements, and makes rr[k], invrr[k] point to it. The channel
+	arrays must have already been sized with ensureChannels().
+     */
+    void ensureRow(int k, int n) {
+	if (mr.length <= k) {
+	    double[][] a = new double[rr.length][], b = new double[rr.length][];
+	    System.arraycopy(mr, 0, a, 0, mr.length);
+	    System.arraycopy(minvr, 0, b, 0, minvr.length);
+	    mr = a;
+	    minvr = b;
+	}
+	if (mr[k] == null || mr[k].length < n) {
+	    mr[k] = new double[n];
+	    minvr[k] = new double[n];
+	}
+	rr[k] = mr[k];
+	invrr[k] = minvr[k];
+    }
+
+    /** Makes sure that the fusion output arrays can hold n elements.
+	Their content is preserved. */
+    void ensureOutput(int n) {
+	if (c.length >= n) return;
+	int len = Math.max(n, 2*c.length);
+	c = grow(c, len);
+	e = grow(e, len);
+	d = grow(d, len);
+	cost = grow(cost, len);
+	PolicySignature[] t = new PolicySignature[len];
+	System.arraycopy(trees, 0, t, 0, trees.length);
+	trees = t;
+	kept = new int[len];
+    }
+
+    /** Makes sure that nIn frontiers can be merged */
+    void ensureInputs(int nIn) {
+	heap.ensureCapacity(nIn);
+	if (pos.length < nIn) {
+	    pos = new int[nIn];
+	    tied = new int[nIn];
+	}
+    }
+
+    /** Makes sure that n vertices can be sorted */
+    void ensureSort(int n) {
+	if (sorted.length < n) {
+	    sorted = new int[n];
+	    sortTmp = new int[n];
+	}
+    }
+
+    /** Makes sure that the selection scratch arrays can hold n elements */
+    void ensureSelection(int n) {
+	if (selCost.length < n) {
+	    selCost = new double[n];
+	    selD = new double[n];
+	    selKept = new int[n];
+	}
+    }
+
+    /** Makes sure that the vertex cap's arrays can hold n points, and
+	paths of the given number of chords */
+    void ensureCap(int n, int segments) {
+	if (capX.length < n) {
+	    capX = new double[n];
+	    capY = new double[n];
+	    capS = new double[n];
+	    capPrev = new double[n];
+	    capCur = new double[n];
+	    capArg = new int[0][];
+	}
+	if (capArg.length < segments+1) {
+	    int a[][] = new int[segments+1][];
+	    System.arraycopy(capArg, 0, a, 0, capArg.length);
+	    capArg = a;
+	}
+	for(int s=0; s<=segments; s++) {
+	    if (capArg[s] == null) capArg[s] = new int[capX.length];
+	}
+    }
+
+    private static double[] grow(double a[], int len) {
+	double b[] = new double[len];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+
+}
@@ -0,0 +1,36 @@
+package dd.engine;
+
+/** The default frontier store: the frontiers are kept as Java
+    objects, in one array per live layer, indexed by the sets' ranks. */
+class HeapFrontierStore extends FrontierStore {
+
+    /** layers[k] holds the frontiers of the sets of size k, or is null */
+    private FrontierInfo layers[][] = new FrontierInfo[0][];
+
+    void startLayer(int layer, int size) {
+	if (layer >= layers.length) {
+	    FrontierInfo[][] a = new FrontierInfo[layer+1][];
+	    System.arraycopy(layers, 0, a, 0, layers.length);
+	    layers = a;
+	}
+	layers[layer] = new FrontierInfo[size];
+    }
+
+    void put(int layer, int rank, FrontierInfo f) {
+	FrontierInfo a[] = layers[layer];
+	if (a[rank] != null) {
+	    throw new AssertionError("Frontier["+layer+"]["+rank+"] is already filled?!");
+	}
+	a[rank] = f;
+    }
+
+    FrontierInfo get(int layer, int rank) {
+	FrontierInfo a[] = (layer < layers.length) ? layers[layer] : null;
+	return (a == null) ? null : a[rank];
+    }
+
+    void dropLayer(int layer) {
+	if (layer < layers.length) layers[layer] = null;
+    }
+
+}
@@ -0,0 +1,114 @@
+package dd.engine;
+
+/** A binary min-heap of small integer ids (0 through capacity-1),
+    each one associated with a double key. Among ids with equal keys,
+    the smaller id comes first, so that the order in which elements
+    are retrieved is fully deterministic. This is used in merging
+    several sorted sequences (frontiers, or channel segments), where
+    the heap holds the "heads" of the sequences.
+
+    <p>The heap allocates no memory after it has been created (or
+    grown by {@link #ensureCapacity(int)}), and can be reused
+    after {@link #clear()}.
+ */
+final class IndexHeap {
+    /** heap[0..size-1] are the ids, in the heap order */
+    private int heap[];
+    /** key[id] is the key currently associated with the id */
+    private double key[];
+    private int size = 0;
+
+    IndexHeap(int capacity) {
+	heap = new int[capacity];
+	key = new double[capacity];
+    }
+
+    /** Makes sure that ids 0 through capacity-1 can be stored. Clears
+	the heap if it needs to be grown. */
+    void ensureCapacity(int capacity) {
+	if (capacity > heap.length) {
+	    heap = new int[capacity];
+	    key = new double[capacity];
+	    size = 0;
+	}
+    }
+
+    void clear() {
+	size = 0;
+    }
+
+    int size() {
+	return size;
+    }
+
+    boolean isEmpty() {
+	return size == 0;
+    }
+
+    /** Adds an id that is not in the heap yet */
+    void add(int id, double k) {
+	key[id] = k;
+	int i = size++;
+	heap[i] = id;
+	siftUp(i);
+    }
+
+    /** The id with the smallest key */
+    int peek() {
+	return heap[0];
+    }
+
+    /** The smallest key */
+    double peekKey() {
+	return key[heap[0]];
+    }
+
+    /** Removes and returns the id with the smallest key */
+    int poll() {
+	int top = heap[0];
+	size--;
+	if (size > 0) {
+	    heap[0] = heap[size];
+	    siftDown(0);
+	}
+	return top;
+    }
+
+    /** Changes the key of the id at the top of the heap, and restores
+	the heap order. This is cheaper than poll() followed by add().
+     */
+    void replaceTopKey(double k) {
+	key[heap[0]] = k;
+	siftDown(0);
+    }
+
+    /** Does the id a go before id b? */
+    private boolean less(int a, int b) {
+	return key[a] < key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+	int id = heap[i];
+	while(i > 0) {
+	    int parent = (i-1) >> 1;
+	    if (!less(id, heap[parent])) break;
+	    heap[i] = heap[parent];
+	    i = parent;
+	}
+	heap[i] = id;
+    }
+
+    private void siftDown(int i) {
+	int id = heap[i];
+	while(true) {
+	    int child = 2*i + 1;
+	    if (child >= size) break;
+	    if (child+1 < size && less(heap[child+1], heap[child])) child++;
+	    if (!less(heap[child], id)) break;
+	    heap[i] = heap[child];
+	    i = child;
+	}
+	heap[i] = id;
+    }
+
+}
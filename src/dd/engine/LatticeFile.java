@@ -0,0 +1,257 @@
+package dd.engine;
+
+import java.io.*;
+
+/** A persisted subset lattice: a file holding the frontiers of all
+    subsets of a sensor set, as computed by a frontier build. Such a
+    file is written by {@link Frontier#buildFrontier(Test[],
+    FrontierContext, int, java.util.Vector)} if {@link
+    Options#getSaveLatticeFile()} is set, and can be used to avoid
+    recomputing the frontiers of these subsets in a later build (see
+    {@link Frontier#buildFrontierIncremental(File, Test[],
+    FrontierContext, int)}).
+
+    <p>The file is written with a DataOutputStream. It begins with a
+    header, which contains a description of the sensors and the
+    context of the build, including the costs of INSPECT, and thus E
+    (in the same format as in a {@link Checkpoint}), and the size of the largest sets stored. It is
+    followed by one record for each subset, layer by layer (in the
+    order of increasing set size), and, within each layer, in the
+    order of their {@link SensorLattice#rank(SensorSet) rank}. A
+    record consists of the set's size; its key, i.e. the number of
+    copies of each sensor in the set; and the frontier, in the
+    format of {@link Checkpoint#writeFrontier(DataOutputStream,
+    FrontierInfo, boolean)}. The file ends with a marker (a record
+    with the size of -1); a file without it (e.g. left by an
+    interrupted build) is considered incomplete, and is not read.
+
+    <p>Each record is written as soon as the set's frontier has been
+    computed, so saving the lattice does not require keeping any
+    more frontiers in memory than the build itself does. Since the
+    frontier of a set covers all policies that only use the sensors
+    from that set, the file can be used to look up the frontier of
+    any subset of the sensor menu (see {@link #readSets(File, Test[],
+    FrontierContext, int[][])}, and, for repeated queries, {@link
+    LatticeQuery}).
+
+    <p>Since only the signatures of the frontiers are saved, lattice
+    files can only be used with signaturesOnly=true.
+ */
+class LatticeFile {
+
+    /** "DDLT" */
+    private static final int MAGIC = 0x44444c54;
+    private static final int VERSION = 2;
+    /** The set size that marks the end of the file */
+    private static final int END = -1;
+
+    /** Reads the frontiers of the given sets from a lattice file. The
+	file is read sequentially, and only the requested frontiers are
+	kept.
+	@param t The sensors of the sets stored in the file
+	@param context The context in which the stored frontiers have
+	been built
+	@param keys The sets: keys[j][i] is the number of copies of the
+	i-th sensor in the j-th set
+	@return The frontiers of the sets, in the same order; the
+	elements for the sets not found in the file (e.g. because it
+	has been written by a build with a limited maxDepth) are null
+     */
+    static FrontierInfo[] readSets(File f, Test t[], FrontierContext context, int keys[][]) throws DDException {
+	FrontierInfo[] found = new FrontierInfo[keys.length];
+	int maxSize = 0, missing = keys.length;
+	for(int[] key: keys) {
+	    int size = 0;
+	    for(int c: key) size += c;
+	    maxSize = Math.max(maxSize, size);
+	}
+	Reader reader = new Reader(f, t, -1, context);
+	try {
+	    for(; missing > 0 && !reader.atEnd() && reader.size <= maxSize; reader.advance()) {
+		for(int j=0; j<keys.length; j++) {
+		    if (found[j] == null && java.util.Arrays.equals(keys[j], reader.cnt)) {
+			found[j] = reader.frontier;
+			missing--;
+		    }
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return found;
+    }
+
+    /** Writes a lattice file. The records must be written in the
+	order described in {@link LatticeFile}.
+     */
+    static class Writer {
+	private final File file;
+	private DataOutputStream out;
+	private final boolean withE;
+
+	/** Creates the file and writes the header
+	    @param maxSetSize The size of the largest sets that will be written
+	 */
+	Writer(File f, Test t[], FrontierContext context, int maxSetSize) throws DDException {
+	    file = f;
+	    withE = context.multiPi;
+	    try {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		Checkpoint.writeDescription(out, t, new FrontierContext[] {context});
+		out.writeInt(maxSetSize);
+	    } catch(IOException ex) {
+		abort();
+		throw new DDException("Error writing lattice file " + f + ": " + ex.getMessage());
+	    }
+	}
+
+	/** Writes the record for the set ss */
+	void write(SensorSet ss, FrontierInfo f) throws DDException {
+	    try {
+		out.writeInt(ss.getSize());
+		for(int c: ss.cnt) out.writeInt(c);
+		Checkpoint.writeFrontier(out, f, withE);
+	    } catch(IOException ex) {
+		throw new DDException("Error writing lattice file " + file + ": " + ex.getMessage());
+	    }
+	}
+
+	/** Writes the end marker and closes the file */
+	void finish() throws DDException {
+	    try {
+		out.writeInt(END);
+		out.close();
+		out = null;
+	    } catch(IOException ex) {
+		throw new DDException("Error writing lattice file " + file + ": " + ex.getMessage());
+	    }
+	}
+
+	/** If the file has not been finished, closes and deletes it. This
+	    is to be called in a finally clause, to get rid of the
+	    incomplete file when the build fails or is interrupted. */
+	void abort() {
+	    if (out == null) return;
+	    try {
+		out.close();
+	    } catch(IOException ex) {}
+	    out = null;
+	    file.delete();
+	}
+    }
+
+    /** Reads a lattice file sequentially. The current record is
+	available in the fields {@link #size}, {@link #cnt} and {@link
+	#frontier}; {@link #advance()} moves on to the next one.
+     */
+    static class Reader {
+	private final File file;
+	private DataInputStream in;
+	private CountingInputStream counter;
+	private final FrontierContext context;
+	/** The position of the current record in the file */
+	long offset;
+	/** The number of sensors in the sets */
+	final int n;
+	/** The size of the largest sets in the file */
+	final int maxSetSize;
+
+	/** The size of the current set, or END */
+	int size;
+	/** The current set's key: cnt[i] is the number of copies of the i-th sensor */
+	final int cnt[];
+	/** The current set's frontier */
+	ColumnFrontier frontier;
+
+	/** Opens the file, checks that it has been written by a build with
+	    the same sensors and context, and reads the first record.
+	    @param t The sensors of the sets stored in the file
+	    @param changed If not negative, the index of the sensor whose
+	    cost and ROC curve may have changed since the file was written
+	    @param context The context in which the stored frontiers
+	    have been built. It will be attached to the frontiers read.
+	 */
+	Reader(File f, Test t[], int changed, FrontierContext _context) throws DDException {
+	    file = f;
+	    context = _context;
+	    n = t.length;
+	    cnt = new int[n];
+	    try {
+		counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(f)));
+		in = new DataInputStream(counter);
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+		    throw new DDException("File " + f + " is not a lattice file, or has been written by a different version of the program");
+		}
+		String mismatch = Checkpoint.checkDescription(in, t, new FrontierContext[] {context}, changed);
+		if (mismatch != null) {
+		    throw new DDException("Lattice file " + f + " has been written by a different computation: " + mismatch);
+		}
+		maxSetSize = in.readInt();
+	    } catch(IOException ex) {
+		close();
+		throw new DDException("Error reading lattice file " + f + ": " + ex.getMessage());
+	    } catch(DDException ex) {
+		close();
+		throw ex;
+	    }
+	    advance();
+	}
+
+	/** Has the end marker been reached? */
+	boolean atEnd() {
+	    return size == END;
+	}
+
+	/** Reads the next record */
+	void advance() throws DDException {
+	    try {
+		offset = counter.count;
+		size = in.readInt();
+		if (size == END) {
+		    frontier = null;
+		    return;
+		}
+		for(int i=0; i<n; i++) cnt[i] = in.readInt();
+		frontier = Checkpoint.readFrontier(in, context);
+	    } catch(EOFException ex) {
+		throw new DDException("Lattice file " + file + " is incomplete");
+	    } catch(IOException ex) {
+		throw new DDException("Error reading lattice file " + file + ": " + ex.getMessage());
+	    }
+	}
+
+	void close() {
+	    if (in == null) return;
+	    try {
+		in.close();
+	    } catch(IOException ex) {}
+	    in = null;
+	}
+    }
+
+    /** Keeps track of how many bytes have been read */
+    private static class CountingInputStream extends FilterInputStream {
+	long count = 0;
+	CountingInputStream(InputStream in) {
+	    super(in);
+	}
+	public int read() throws IOException {
+	    int b = super.read();
+	    if (b >= 0) count++;
+	    return b;
+	}
+	public int read(byte b[], int off, int len) throws IOException {
+	    int n = super.read(b, off, len);
+	    if (n > 0) count += n;
+	    return n;
+	}
+	public long skip(long n) throws IOException {
+	    long k = super.skip(n);
+	    count += k;
+	    return k;
+	}
+    }
+
+}
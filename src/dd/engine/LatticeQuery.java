@@ -0,0 +1,276 @@
+package dd.engine;
+
+import java.io.*;
+import java.util.*;
+
+/** Answers questions about the frontiers of arbitrary subsets of the
+    sensors, using a {@link LatticeFile lattice file} saved by an
+    earlier build as an index. For a subset S, the frontier stored for
+    S covers all policies that only use sensors from S, so "what is
+    the best detection rate for the budget B, using only the sensors
+    from S?" (or "what is the smallest budget providing the detection
+    rate D?") is answered by a binary search over that frontier's
+    vertices.
+
+    <p>When the query service is created, the file is read through
+    once, to record the position of each set's record; after that,
+    each query only reads one record from the file (or none, if the
+    set's frontier has been used recently and is still cached), and
+    takes O(log L) time for a frontier of L vertices.
+ */
+public class LatticeQuery {
+
+    /** How many recently used frontiers are kept in memory */
+    static final int CACHE_SIZE = 256;
+
+    private final Test t[];
+    private final FrontierContext context;
+    private final SensorLattice lattice;
+    private final File file;
+    private RandomAccessFile raf;
+
+    /** The largest sets stored in the file */
+    private final int maxSetSize;
+    /** The records of the sets of size s occupy positions
+	layerStart[s] thru layerStart[s+1]-1 of offsets[], in the
+	order of their rank */
+    private final int layerStart[];
+    /** The positions of the records in the file, followed by that of
+	the end marker */
+    private final long offsets[];
+
+    /** The recently used frontiers, by their position in offsets[] */
+    private final LinkedHashMap<Integer,ColumnFrontier> cache =
+	new LinkedHashMap<Integer,ColumnFrontier>(16, 0.75f, true) {
+	protected boolean removeEldestEntry(Map.Entry<Integer,ColumnFrontier> eldest) {
+	    return size() > CACHE_SIZE;
+	}
+    };
+
+    /** Opens the lattice file, and indexes it.
+	@param t The sensors of the sets stored in the file
+	@param context The context in which the stored frontiers have
+	been built
+     */
+    public LatticeQuery(File f, Test _t[], FrontierContext _context) throws DDException {
+	file = f;
+	t = _t;
+	context = _context;
+	lattice = new SensorLattice(t);
+	LatticeFile.Reader reader = new LatticeFile.Reader(f, t, -1, context);
+	try {
+	    maxSetSize = reader.maxSetSize;
+	    layerStart = new int[maxSetSize+2];
+	    long total = lattice.countSets(maxSetSize);
+	    if (total >= Integer.MAX_VALUE) throw new DDException("Lattice file " + f + " has too many records to index");
+	    offsets = new long[(int)total + 1];
+	    int k = 0;
+	    for(int s=1; s<=maxSetSize; s++) {
+		layerStart[s] = k;
+		long layerSize = lattice.layerSize(s);
+		for(long r=0; r<layerSize; r++) {
+		    if (reader.atEnd() || reader.size != s) throw new DDException("Lattice file " + f + " does not have all sets of size " + s);
+		    offsets[k++] = reader.offset;
+		    reader.advance();
+		}
+	    }
+	    layerStart[maxSetSize+1] = k;
+	    if (!reader.atEnd()) throw new DDException("Lattice file " + f + " has unexpected records after those of size " + maxSetSize);
+	    offsets[k] = reader.offset;
+	} finally {
+	    reader.close();
+	}
+	try {
+	    raf = new RandomAccessFile(f, "r");
+	} catch(IOException ex) {
+	    throw new DDException("Error opening lattice file " + f + ": " + ex.getMessage());
+	}
+    }
+
+    /** Converts a description of a subset of the sensors into its key.
+	@param s A comma-separated list of sensor names, each optionally
+	preceded by a multiplicity, as in "A,2*D"
+	@return The number of copies of each sensor in the set
+     */
+    static int[] parseSubset(Test t[], String s) throws DDException {
+	int key[] = new int[t.length];
+	for(String z: s.split(",")) {
+	    z = z.trim();
+	    int k = 1;
+	    int star = z.indexOf('*');
+	    if (star >= 0) {
+		try {
+		    k = Integer.parseInt(z.substring(0, star).trim());
+		} catch(NumberFormatException ex) {
+		    throw new DDException("Invalid multiplicity in '" + z + "'");
+		}
+		z = z.substring(star+1).trim();
+	    }
+	    int i = 0;
+	    while(i < t.length && !t[i].getName().equals(z)) i++;
+	    if (i == t.length) throw new DDException("No sensor named '" + z + "' in the config file");
+	    key[i] += k;
+	    if (key[i] > t[i].getNCopies()) throw new DDException("Sensor '" + z + "' only has " + t[i].getNCopies() + " copies");
+	}
+	return key;
+    }
+
+    /** Same as {@link #parseSubset(Test[], String)}, for this lattice's
+	sensors */
+    public int[] parseSubset(String s) throws DDException {
+	return parseSubset(t, s);
+    }
+
+    /** Retrieves the frontier of a set
+	@param key The number of copies of each sensor in the set
+	@return The frontier, or null for the empty set
+     */
+    public FrontierInfo getFrontier(int key[]) throws DDException {
+	if (key.length != t.length) throw new IllegalArgumentException("The key has " + key.length + " elements instead of " + t.length);
+	SensorSet ss = new SensorSet(lattice);
+	for(int i=0; i<key.length; i++) ss.cnt[i] = key[i];
+	final int s = ss.getSize();
+	if (s == 0) return new Frontier(context);
+	if (s > maxSetSize) throw new DDException("Lattice file " + file + " only has sets of up to " + maxSetSize + " sensors");
+	int k = layerStart[s] + (int)lattice.rank(ss);
+	ColumnFrontier f = cache.get(k);
+	if (f != null) return f;
+
+	byte buf[] = new byte[(int)(offsets[k+1] - offsets[k])];
+	try {
+	    raf.seek(offsets[k]);
+	    raf.readFully(buf);
+	    DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf));
+	    boolean ok = (in.readInt() == s);
+	    for(int i=0; i<key.length; i++) ok = ok && (in.readInt() == key[i]);
+	    if (!ok) throw new DDException("Lattice file " + file + " is damaged: wrong set at position " + offsets[k]);
+	    f = Checkpoint.readFrontier(in, context);
+	} catch(IOException ex) {
+	    throw new DDException("Error reading lattice file " + file + ": " + ex.getMessage());
+	}
+	cache.put(k, f);
+	return f;
+    }
+
+    /** The best (possibly mixed) policy using only the sensors of the
+	set whose cost does not exceed the budget. The result is the same
+	as that of {@link FrontierInfo#detectionRateForBudget(double,
+	boolean)} with mixing allowed, but the vertices are found by
+	binary search.
+	@param key The number of copies of each sensor in the set
+     */
+    public DetectionRateForBudget detectionRateForBudget(int key[], double budget) throws DDException {
+	if (budget < 0 || budget > context.getInspectCostPi() ) throw new IllegalArgumentException("budget outside of the legal range [0,"+context.getInspectCostPi()+"]");
+	FrontierInfo f = getFrontier(key);
+	// the vertices are -1 (RELEASE) thru f.length() (INSPECT); find
+	// the last one within the budget
+	int lo = -1, hi = f.length();
+	if (f.getPolicyCostPi(hi) <= budget) lo = hi;
+	while(hi - lo > 1) {
+	    int mid = (lo + hi) / 2;
+	    if (f.getPolicyCostPi(mid) <= budget) lo = mid;
+	    else hi = mid;
+	}
+	DetectionRateForBudget r;
+	double c1 = f.getPolicyCostPi(lo);
+	if (lo == f.length() || c1 == budget) {
+	    r = new DetectionRateForBudget(getPolicy(f, lo), null, context, 1);
+	} else {
+	    double c2 = f.getPolicyCostPi(lo+1);
+	    r = new DetectionRateForBudget(getPolicy(f, lo), getPolicy(f, lo+1), context, (c2-budget)/(c2-c1));
+	}
+	r.givenBudget = budget;
+	return r;
+    }
+
+    /** The cheapest (possibly mixed) policy using only the sensors of
+	the set that provides the given detection rate. The result is the
+	same as that of {@link
+	DetectionRateForBudget#budgetForDetectionRate(PolicySignature[],
+	FrontierContext, double)}, but the vertices are found by binary
+	search.
+	@param key The number of copies of each sensor in the set
+     */
+    public DetectionRateForBudget budgetForDetectionRate(int key[], double d) throws DDException {
+	if (d < 0 || d > 1 ) throw new IllegalArgumentException("Requested detection rate  outside of the legal range [0,1]");
+	FrontierInfo f = getFrontier(key);
+	// find the first vertex with the detection rate of at least d
+	int lo = -1, hi = f.length();
+	if (f.getDetectionRate(lo) >= d) hi = lo;
+	while(hi - lo > 1) {
+	    int mid = (lo + hi) / 2;
+	    if (f.getDetectionRate(mid) >= d) hi = mid;
+	    else lo = mid;
+	}
+	double d2 = f.getDetectionRate(hi);
+	if (d2 == d) return new DetectionRateForBudget(getPolicy(f, hi), null, context, 1);
+	double d1 = f.getDetectionRate(hi-1);
+	return new DetectionRateForBudget(getPolicy(f, hi-1), getPolicy(f, hi), context, (d2-d)/(d2-d1));
+    }
+
+    /** The i-th vertex of the frontier, with -1 meaning RELEASE and
+	f.length() meaning INSPECT */
+    private PolicySignature getPolicy(FrontierInfo f, int i) {
+	return (i == -1) ? Policy.RELEASE :
+	    (i == f.length()) ? context.INSPECT :
+	    new PolicySignature(f.getPolicyCost0(i), f.getDetectionRate(i));
+    }
+
+    /** Answers a batch of queries. Each line of the input describes one
+	query, as a subset (in the format of {@link #parseSubset(String)})
+	followed by either "budget B" or "detection D"; e.g.
+	<pre>
+	A,C,F budget 0.3
+	B,2*D detection 0.9
+	</pre>
+	Empty lines, and those beginning with '#', are ignored. For each
+	query, one line with the answer is printed.
+	@return The number of queries answered
+     */
+    public int runBatch(BufferedReader in, PrintStream out) throws IOException, DDException {
+	int cnt = 0, lineNo = 0;
+	String line;
+	while((line = in.readLine()) != null) {
+	    lineNo++;
+	    line = line.trim();
+	    if (line.length() == 0 || line.startsWith("#")) continue;
+	    String z[] = line.split("\\s+");
+	    if (z.length != 3) throw new DDException("Line " + lineNo + ": expected 'subset budget B' or 'subset detection D', found '" + line + "'");
+	    int key[] = parseSubset(z[0]);
+	    double x;
+	    try {
+		x = Double.parseDouble(z[2]);
+	    } catch(NumberFormatException ex) {
+		throw new DDException("Line " + lineNo + ": invalid number '" + z[2] + "'");
+	    }
+	    DetectionRateForBudget r;
+	    if (z[1].equals("budget")) {
+		double maxB = context.getInspectCostPi();
+		if (!(x >= 0 && x <= maxB)) throw new DDException("Line " + lineNo + ": budget " + x + " outside of the legal range [0," + maxB + "]");
+		r = detectionRateForBudget(key, x);
+	    } else if (z[1].equals("detection")) {
+		if (!(x >= 0 && x <= 1)) throw new DDException("Line " + lineNo + ": detection rate " + x + " outside of the legal range [0,1]");
+		r = budgetForDetectionRate(key, x);
+	    } else {
+		throw new DDException("Line " + lineNo + ": expected 'budget' or 'detection', found '" + z[1] + "'");
+	    }
+	    out.println("{" + z[0] + "} " + z[1] + "=" + x + ": detection rate=" + r.detectionRate + ", cost=" + r.actualBudget + ", policy " + r.p1.toShortString() + (r.w < 1 ? " with probability " + r.w + ", otherwise " + r.p2.toShortString() : ""));
+	    cnt++;
+	}
+	return cnt;
+    }
+
+    /** The number of sets indexed */
+    public int getSetCnt() {
+	return offsets.length - 1;
+    }
+
+    public void close() {
+	if (raf == null) return;
+	try {
+	    raf.close();
+	} catch(IOException ex) {}
+	raf = null;
+    }
+
+}
@@ -0,0 +1,168 @@
+package dd.engine;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Runs the computations for one "layer" of the frontier-building
+    dynamic programming algorithm (i.e., for all subsets of the same
+    size), either in the calling thread, or on a pool of worker
+    threads. Within a layer, the frontier of every subset depends only
+    on the already-finished frontiers of the previous layer, so the
+    subsets can be processed in any order; however, the results are
+    always handed back to the caller in the order in which the subsets
+    have been listed, and in the caller's thread. This guarantees that
+    a parallel build produces exactly the same frontiers (and the same
+    sequence of progress messages) as a serial one.
+
+    <p>The number of worker threads is controlled by {@link
+    Options#getThreads()}, unless an executor has been supplied via
+    {@link FrontierContext#setExecutor(ExecutorService)}; in that case,
+    the work is divided among as many threads as the executor has (if
+    it is a bounded ThreadPoolExecutor or a ForkJoinPool), or as many
+    as {@link Options#getThreads()} says.
+ */
+class LayerRunner {
+
+    /** A computation to be carried out for the k-th element of a layer.
+	It must not modify any shared data.*/
+    interface Job<T> {
+	T compute(int k) throws DDException;
+    }
+
+    /** Receives the results of {@link Job}s, in order, in the caller's
+	thread. */
+    interface Sink<T> {
+	/** @return false if the computation should be cancelled */
+	boolean accept(int k, T result) throws DDException;
+    }
+
+    /** The executor supplied by the caller, or one created by us */
+    private final ExecutorService pool;
+    /** True if the pool has been created by us (and thus should be
+	shut down by us as well) */
+    private final boolean ownPool;
+    /** The number of threads among which the work will be divided */
+    private final int nThreads;
+
+    /** If set to true, the workers will stop taking new elements */
+    private volatile boolean cancelled = false;
+
+    /** Creates a runner for a computation carried out in the given
+	context. If the context does not supply an executor, and more than
+	one thread has been requested via the options, we create
+	our own thread pool, which must later be released by {@link
+	#shutdown()}.
+     */
+    LayerRunner(FrontierContext context) {
+	ExecutorService x = context.getExecutor();
+	int n = Options.getThreads();
+	if (x != null) {
+	    pool = x;
+	    ownPool = false;
+	    // as many chunks as the pool can actually run at once
+	    int size = (x instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)x).getMaximumPoolSize() : 0;
+	    if (size > 0 && size < Integer.MAX_VALUE) {
+		nThreads = size;
+	    } else if (x instanceof ForkJoinPool) {
+		nThreads = ((ForkJoinPool)x).getParallelism();
+	    } else {
+		nThreads = Math.max(1, n);
+	    }
+	} else if (n > 1) {
+	    pool = Executors.newFixedThreadPool(n, new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "frontier-worker");
+			t.setDaemon(true);
+			return t;
+		    }
+		});
+	    ownPool = true;
+	    nThreads = n;
+	} else {
+	    pool = null;
+	    ownPool = false;
+	    nThreads = 1;
+	}
+    }
+
+    /** Is this runner going to use more than one thread? */
+    boolean isParallel() {
+	return pool != null;
+    }
+
+    /** Releases the thread pool, if we have created it */
+    void shutdown() {
+	if (ownPool) pool.shutdownNow();
+    }
+
+    /** Applies job to each of the elements 0 through count-1, and passes the
+	results to the sink, in order.
+	@return false if the sink has requested cancellation
+     */
+    <T> boolean run(int count, final Job<T> job, Sink<T> sink) throws DDException {
+	if (pool == null || count < 2) {
+	    for(int k=0; k<count; k++) {
+		if (!sink.accept(k, job.compute(k))) return false;
+	    }
+	    return true;
+	}
+
+	// Split the layer into chunks, several per thread, so that the
+	// load is reasonably well balanced
+	final int chunk = Math.max(1, count / (nThreads * 8));
+	final Object[] results = new Object[count];
+	Vector<Future<Object>> futures = new Vector<Future<Object>>();
+
+	for(int lo=0; lo<count; lo += chunk) {
+	    final int from = lo, to = Math.min(count, lo+chunk);
+	    futures.addElement( pool.submit(new Callable<Object>() {
+		    public Object call() throws DDException {
+			for(int k=from; k<to && !cancelled; k++) {
+			    results[k] = job.compute(k);
+			}
+			return null;
+		    }
+		}));
+	}
+
+	try {
+	    int k = 0;
+	    for(Future<Object> f: futures) {
+		waitFor(f);
+		int to = Math.min(count, k+chunk);
+		for(; k<to; k++) {
+		    @SuppressWarnings("unchecked") T r = (T)results[k];
+		    results[k] = null; // let the GC have it when the sink is done
+		    if (!sink.accept(k, r)) {
+			cancelled = true;
+			return false;
+		    }
+		}
+	    }
+	    return true;
+	} finally {
+	    if (cancelled) {
+		for(Future<Object> f: futures) f.cancel(true);
+	    }
+	}
+    }
+
+    /** Waits for a task to complete, and re-throws any exception
+	it may have thrown */
+    private void waitFor(Future<Object> f) throws DDException {
+	try {
+	    f.get();
+	} catch(InterruptedException ex) {
+	    cancelled = true;
+	    throw new DDException("Frontier computation interrupted");
+	} catch(ExecutionException ex) {
+	    cancelled = true;
+	    Throwable cause = ex.getCause();
+	    if (cause instanceof DDException) throw (DDException)cause;
+	    if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+	    if (cause instanceof Error) throw (Error)cause;
+	    throw new AssertionError(cause);
+	}
+    }
+
+}
@@ -12,9 +12,102 @@ import java.util.regex.*;
     <p>
     Usage:
     <pre>
-    java [-Dvs=VM1|VM2|EB1][-Deps=0.0001] [-DmaxDepth=n][-DsignaturesOnly=false] [-Dverbsity=0|1|...] dd.engine.Main config.txt
+    java [-Dvs=VM1|VM2|EB1][-Deps=0.0001] [-DmaxDepth=n][-DsignaturesOnly=false] [-Dverbsity=0|1|...] [-Dthreads=n] [-DfrontierStore=heap|mmap [-DspillDir=dir]] [-Dcheckpoint=file] [-Dresume=file] [-DsaveLattice=file] [-DfrontierCache=dir] [-DbaseLattice=file [-DchangedSensor=k | -DlatticeSubsets=A,C,F;... | -DlatticeQueries=file]] [-Ddeadline=sec] [-Dbeam=K [-DbeamCheck=true]] [-Dcluster=tol] [-Dbudget=B] [-Dengine=hull|parametric [-DengineCheck=true]] [-Dsweep=k1,k2,...|all [-DsweepDir=dir]] [-Dplan=true] [-DmemoryBudget=MB] [-DtimeBudget=sec] dd.engine.Main config.txt
     </pre>
     
+    <p> With -DfrontierStore=mmap (which requires
+    -DsignaturesOnly=true), the frontiers of the subsets are kept in
+    memory-mapped files in the spill directory, rather than on the Java
+    heap; see {@link FrontierStore}.
+
+    <p> With -Dcheckpoint=file (which also requires
+    -DsignaturesOnly=true), the progress of the computation is saved
+    into the file after each layer of the subset lattice; if the run is
+    interrupted, it can be restarted with the same sensors and options,
+    plus -Dresume=file, to continue from the last saved layer. See
+    {@link Checkpoint}.
+
+    <p> With -DsaveLattice=file (which also requires
+    -DsignaturesOnly=true), the frontiers of all subsets of the
+    sensors are saved into the file. If one more sensor is then added
+    to the end of the config file, the new frontier can be computed
+    with -DbaseLattice=file, which only computes the subsets that
+    include the new sensor. Similarly, if the cost or the ROC curve
+    of the k-th sensor (counting from 0) has changed, adding
+    -DchangedSensor=k only recomputes the subsets that include it.
+    With -DlatticeSubsets="A,C,F;B,2*D" instead, nothing is computed:
+    the frontiers of the listed subsets of the sensors (i.e. of all
+    policies that only use those sensors) are read from the file and
+    printed. With -DlatticeQueries=file, the lattice file is used as an
+    index to answer a batch of budget and detection rate queries for
+    arbitrary subsets, listed in the file; see {@link LatticeQuery}
+    and {@link LatticeFile}.
+
+    <p> With -DfrontierCache=dir (which also requires
+    -DsignaturesOnly=true), the frontiers of the subsets are looked up
+    in, and saved into, a cache in the given directory, keyed by the
+    contents of the sensors in the subset (rather than by their names
+    or the config file). Builds for different configs that share
+    sensors can thus reuse each other's work. See {@link
+    FrontierCache}.
+
+    <p> With -Dvs=CAP -DvertexCap=K, each subset's frontier is cut
+    down to at most K vertices, keeping those that lose the least
+    area, and a bound on the resulting error is reported; see {@link
+    VSMethod#CAP}.
+
+    <p> With -Ddeadline=sec, the computation stops after the given number of
+    seconds, and the frontier for the largest depth that has been
+    completed is reported, along with the area the last completed layer
+    added (a rough estimate, not a bound, of the area still missing); see
+    {@link Frontier#buildFrontierByDeadline(Test[], FrontierContext,
+    int, long)}.
+    
+    <p> With -Dbeam=K, an approximate frontier is built, by keeping only
+    the K best subsets of each size; see {@link
+    Frontier#buildFrontierBeam(Test[], FrontierContext, int, int)}.
+    Adding -DbeamCheck=true also builds the exact frontier, and
+    reports how much area the approximate one misses.
+
+    <p> With -Dcluster=tol, sensors whose costs (relatively) and ROC
+    curves differ by no more than tol are folded into a single sensor
+    with several copies, which makes the subset lattice much smaller;
+    the frontier is then built a second time, with optimistic
+    representatives of the clusters, to report a bound on the error.
+    See {@link SensorClustering}.
+
+    <p> With -Dbudget=B, only the best detection rate for the budget B
+    (and the policy providing it) is found, in a single pass over the
+    subsets that keeps only compact records of their frontiers, and
+    builds only the two policies bracketing the budget; see {@link
+    PointQuery}.
+
+    <p> With -Dengine=parametric, the frontier is traced vertex by
+    vertex (see {@link Frontier#buildFrontierParametric(Test[],
+    FrontierContext, int)}) rather than built by merging the frontiers of
+    all subsets. This is much slower, and is only meant for checking
+    the default engine: adding -DengineCheck=true builds the frontier
+    with both engines, and compares the results.
+
+    <p> With -Dsweep=k1,k2,..., the frontiers for maxDepth=k1, k2, ...
+    are also reported (and, with -DsweepDir=dir, saved into files
+    dir/frontier-k.txt) as the build passes the corresponding layers of
+    the lattice; -Dsweep=all does that for every depth. For a single
+    sensor with n copies, this gives the frontiers for all smaller
+    numbers of copies in one run (see {@link
+    Frontier#buildFrontierSweep(Test[], FrontierContext, int, boolean[],
+    Frontier.SweepSink)}).
+
+    <p> With -DmemoryBudget=MB or -DtimeBudget=sec, the cost of the
+    computation is estimated before it starts (see {@link Planner}),
+    and if the estimated memory or time exceeds the budget, a warning
+    is printed, with eps and maxDepth values that would fit. With
+    -Dplan=true, the estimate is printed layer by layer, and the
+    frontier is not computed. (Since the estimate runs small probe
+    builds, it is not done otherwise, nor, except with -Dplan=true, for
+    lattices small enough for the probe to cover them; see {@link
+    Planner#isSmall(Test[], int)}.)
+    
     <p> For the explanation of vertex skipping methods (-Dvs=...), see
     {@link VSMethod}.
 
@@ -41,13 +134,190 @@ public class Main  {
 	Test[] test = readSensorData(config);
 
 	System.out.println("config=" + config + "; eps=" + Options.getEps() + ", signaturesOnly=" + Options.signaturesOnly);
-	Frontier f = Frontier.buildFrontier(approximateSensors(test));
+	SensorClustering clustering = null;
+	if (Options.getClusterTolerance() > 0) {
+	    if (Options.getBaseLatticeFile() != null) throw new DDException("Clustering can't be used with an incremental build");
+	    clustering = new SensorClustering(test, Options.getClusterTolerance());
+	    System.out.println(clustering);
+	    test = clustering.getSensors();
+	}
+	Test[] actual = approximateSensors(test);
+	int maxDepth = Options.getMaxDepth(SensorSet.maxSetSize(actual));
+
+	if (Options.getLatticeSubsets() != null) {
+	    printLatticeSubsets(actual, Options.getLatticeSubsets());
+	    return;
+	}
+	if (Options.getLatticeQueries() != null) {
+	    File base = Options.getBaseLatticeFile();
+	    if (base == null) throw new DDException("Lattice queries require a lattice file (-DbaseLattice=file)");
+	    Calendar startTime = Calendar.getInstance();
+	    LatticeQuery q = new LatticeQuery(base, actual, Options.getZeroPiContext());
+	    long indexMsec = Calendar.getInstance().getTimeInMillis() - startTime.getTimeInMillis();
+	    BufferedReader in = new BufferedReader(new FileReader(Options.getLatticeQueries()));
+	    try {
+		int n = q.runBatch(in, System.out);
+		long msec = Calendar.getInstance().getTimeInMillis() - startTime.getTimeInMillis() - indexMsec;
+		System.out.println("Indexed " + q.getSetCnt() + " sets in " + indexMsec + " msec; answered " + n + " queries in " + msec + " msec");
+	    } finally {
+		in.close();
+		q.close();
+	    }
+	    return;
+	}
+
+	if (Options.getQueryBudget() >= 0) {
+	    Calendar startTime = Calendar.getInstance();
+	    PointQuery q = new PointQuery(actual, Options.getZeroPiContext(), maxDepth);
+	    DetectionRateForBudget r = q.detectionRateForBudget(Options.getQueryBudget());
+	    long msec = Calendar.getInstance().getTimeInMillis() - startTime.getTimeInMillis();
+	    System.out.println("Budget=" + r.givenBudget + ": detection rate=" + r.detectionRate + ", with cost=" + r.actualBudget + " (" + q.getSetCnt() + " subsets, " + q.getVertexCnt() + " vertices, " + msec + " msec)");
+	    System.out.println("Policy: " + r.p1.toTreeString() + (r.w < 1 ? " with probability " + r.w + ", otherwise " + r.p2.toTreeString() : ""));
+	    return;
+	}
+
+	if (Options.getPlanOnly() ||
+	    (Options.getPlanRequested() && !Planner.isSmall(actual, maxDepth))) {
+	    Planner plan = new Planner(actual, Options.getZeroPiContext(), maxDepth, 1);
+	    if (Options.getPlanOnly()) plan.print(System.out);
+	    else System.out.println(plan);
+	    String warning = plan.checkBudget(test, Options.getMemoryBudget(), 1000 * Options.getTimeBudgetSec());
+	    if (warning != null) System.out.println("Warning: " + warning);
+	    if (Options.getPlanOnly()) return;
+	}
+
+	Frontier f = build(actual, maxDepth);
+	if (Options.getVSMethod() == VSMethod.CAP && f instanceof AnnotatedFrontier) {
+	    System.out.println("Vertex cap " + Options.getVertexCap() + ": the area under the frontier is at most " + ((AnnotatedFrontier)f).getCapError() + " smaller than without the cap");
+	}
+	if (clustering != null) {
+	    // How much may the clustering have cost us?
+	    System.out.println("Building the frontier for the optimistic representatives of the clusters");
+	    // the files belong to the main build
+	    Options.setSaveLatticeFile(null);
+	    Options.setCheckpointFile(null);
+	    Options.setResumeFile(null);
+	    Frontier upper = build(approximateSensors(clustering.getOptimisticSensors()), maxDepth);
+	    double a = f.areaUnderCurve(), b = upper.areaUnderCurve();
+	    System.out.println("Area under the frontier: " + a + "; with the optimistic representatives, " + b + "; the clustering error is at most " + (b-a));
+	}
 
 	if (Options.verbosity>0) f.print(System.out);
 	else System.out.println("Computed frontier with " + f.policies.length + " non-trivial policies");
     }
 
 
+    /** Builds the frontier for the (already approximated) sensors, in
+	the way requested by the options */
+    private static Frontier build(Test[] actual, int maxDepth) throws DDException {
+	File base = Options.getBaseLatticeFile();
+	double deadlineSec = Options.getDeadlineSec();
+	if (deadlineSec > 0) {
+	    long deadline = System.currentTimeMillis() + (long)(1000 * deadlineSec);
+	    AnnotatedFrontier af = Frontier.buildFrontierByDeadline(actual, Options.getZeroPiContext(), maxDepth, deadline);
+	    System.out.println("Effective depth=" + af.getEffectiveDepth() + ", area added by the last completed layer=" + af.getLastLayerGain() + " (an estimate, not a bound, of the area still missing)");
+	    return af;
+	} else if (Options.getBeamWidth() > 0) {
+	    AnnotatedFrontier af = Frontier.buildFrontierBeam(actual, Options.getZeroPiContext(), maxDepth, Options.getBeamWidth());
+	    if (Options.getBeamCheck()) {
+		AnnotatedFrontier exact = Frontier.buildFrontier(actual, Options.getZeroPiContext(), maxDepth, null);
+		double a = af.areaUnderCurve(), b = exact.areaUnderCurve();
+		System.out.println("Area under the frontier: beam search " + a + " (" + af.runtimeMsec() + " msec), exact " + b + " (" + exact.runtimeMsec() + " msec); shortfall " + (b-a) + " (" + (100*(b-a)/b) + "%)");
+	    }
+	    return af;
+	} else if (base == null) {
+	    String engine = Options.getEngine();
+	    AnnotatedFrontier af;
+	    boolean sweep[] = Options.getSweepDepths(SensorSet.maxSetSize(actual));
+	    if (sweep != null) {
+		if (!engine.equals("hull")) throw new DDException("The sweep can only be done with the 'hull' engine");
+		af = Frontier.buildFrontierSweep(actual, Options.getZeroPiContext(), maxDepth, sweep, new SweepPrinter(Options.getSweepDir()));
+	    } else if (engine.equals("hull")) {
+		af = Frontier.buildFrontier(actual);
+	    } else if (engine.equals("parametric")) {
+		af = Frontier.buildFrontierParametric(actual, Options.getZeroPiContext(), maxDepth);
+	    } else {
+		throw new DDException("Unknown engine '"+engine+"'; use 'hull' or 'parametric'");
+	    }
+	    if (Options.getEngineCheck()) {
+		AnnotatedFrontier other = engine.equals("hull") ?
+		    Frontier.buildFrontierParametric(actual, Options.getZeroPiContext(), maxDepth) :
+		    Frontier.buildFrontier(actual);
+		compareEngines(af, other);
+	    }
+	    return af;
+	} else {
+	    int changed = Options.getChangedSensor();
+	    return (changed < 0) ?
+		Frontier.buildFrontierIncremental(base, actual, Options.getZeroPiContext(), maxDepth) :
+		Frontier.buildFrontierDelta(base, actual, changed, Options.getZeroPiContext(), maxDepth);
+	}
+    }
+
+    /** Looks up the frontiers of the given subsets of the sensors in the
+	lattice file given with -DbaseLattice, and prints them
+	@param subsets The subsets, in the format of {@link
+	Options#getLatticeSubsets()}
+    */
+    private static void printLatticeSubsets(Test[] actual, String subsets) throws DDException {
+	File base = Options.getBaseLatticeFile();
+	if (base == null) throw new DDException("Looking up subsets requires a lattice file (-DbaseLattice=file)");
+	String names[] = subsets.split(";");
+	int keys[][] = new int[names.length][];
+	for(int j=0; j<names.length; j++) keys[j] = LatticeQuery.parseSubset(actual, names[j]);
+	FrontierInfo found[] = LatticeFile.readSets(base, actual, Options.getZeroPiContext(), keys);
+	for(int j=0; j<names.length; j++) {
+	    if (found[j] == null) {
+		System.out.println("Subset {" + names[j].trim() + "}: not in the lattice file");
+	    } else {
+		System.out.println("Subset {" + names[j].trim() + "}: " + found[j].length() + " non-trivial policies, area under the frontier " + found[j].areaUnderCurve());
+		found[j].getFrontier().print(System.out);
+	    }
+	}
+    }
+
+    /** Reports the frontiers for the depths requested with -Dsweep, and
+	saves them into files if -DsweepDir is given */
+    private static class SweepPrinter implements Frontier.SweepSink {
+	private final File dir;
+	SweepPrinter(File _dir) throws DDException {
+	    dir = _dir;
+	    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+		throw new DDException("Cannot create directory " + dir);
+	    }
+	}
+	public void accept(int setSize, AnnotatedFrontier f) throws DDException {
+	    String s = "Depth " + setSize + ": " + f.length() + " non-trivial policies, area under the frontier " + f.areaUnderCurve();
+	    if (dir != null) {
+		File file = new File(dir, "frontier-" + setSize + ".txt");
+		try {
+		    PrintWriter w = new PrintWriter(file);
+		    f.print(w, 0);
+		    w.close();
+		} catch(IOException ex) {
+		    throw new DDException("Error writing " + file + ": " + ex.getMessage());
+		}
+		s += "; saved to " + file;
+	    }
+	    System.out.println(s);
+	}
+    }
+
+    /** Reports how far the frontiers built by the two engines are from
+	each other. The parametric engine finds the top frontier's
+	vertices exactly, and thus the differences should be within what
+	vertex skipping (with the current eps) may cause. */
+    private static void compareEngines(AnnotatedFrontier a, AnnotatedFrontier b) {
+	double maxDiff = 0;
+	for(int k=0; k<=20; k++) {
+	    double budget = k/20.0;
+	    double x = a.detectionRateForBudget(budget, true).detectionRate,
+		y = b.detectionRateForBudget(budget, true).detectionRate;
+	    maxDiff = Math.max(maxDiff, Math.abs(x - y));
+	}
+	System.out.println("Engine check: " + a.length() + " vs. " + b.length() + " vertices, areas " + a.areaUnderCurve() + " vs. " + b.areaUnderCurve() + ", largest detection rate difference " + maxDiff + "; " + a.runtimeMsec() + " vs. " + b.runtimeMsec() + " msec");
+    }
+
     /** The top-level input routine. Reads the config file first, and then
         create a sensor for each sensor file mentioned there.
      */
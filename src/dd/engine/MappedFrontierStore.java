@@ -0,0 +1,224 @@
+package dd.engine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/** A frontier store that keeps each layer's frontiers in a file, which
+    is memory-mapped once the layer is complete. This way, the
+    operating system can page the frontiers in and out as needed,
+    and layers larger than the available RAM (or the Java heap) can
+    be handled, as long as there is enough space on the local disk.
+
+    <p>Only the signatures of the frontiers are stored, so this
+    store can only be used with signaturesOnly=true. The frontier of
+    a set is stored as a record of packed doubles: the costs c[] of
+    all vertices, followed by their detection rates d[], followed
+    (in multi-pi runs only) by their costs on bad items e[]. An index
+    held in memory gives, for each set of a live layer (by its rank),
+    the position of its record in the layer's file, and the number of
+    vertices (and, with {@link VSMethod#CAP}, the frontier's gap). A
+    frontier
+    retrieved with {@link #get(int,int)} is a fresh {@link
+    ColumnFrontier}, which the caller may keep as long as it needs.
+
+    <p>The files are deleted when the layer is dropped, or when the
+    store is closed.
+ */
+class MappedFrontierStore extends FrontierStore {
+
+    /** The largest region of a file that is mapped as a single buffer.
+	A record never crosses a region boundary. */
+    static final long REGION_SIZE = 1L << 30;
+
+    /** The offset value for sets that have not been stored */
+    private static final long NONE = -1;
+
+    private final FrontierContext context;
+    /** Whether costs on bad items need to be stored */
+    private final boolean withE;
+    private final File dir;
+
+    /** The files of the live layers, indexed by the layer number */
+    private LayerFile layers[] = new LayerFile[0];
+
+    /** Used for writing; the records are buffered here */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+
+    MappedFrontierStore(FrontierContext _context, File _dir) throws DDException {
+	context = _context;
+	withE = context.multiPi;
+	dir = _dir;
+	if (!dir.isDirectory()) throw new DDException("Spill directory " + dir + " does not exist");
+    }
+
+    /** The file holding one layer. It is written sequentially, and
+	mapped into memory, one region at a time, when the layer
+	has been completed. */
+    private class LayerFile {
+	final File file;
+	RandomAccessFile raf;
+	FileChannel channel;
+	/** The number of bytes written so far */
+	long size = 0;
+	/** The positions at which the regions start */
+	long regionStart[] = new long[] {0};
+	int regionCnt = 1;
+	/** Non-null once the layer has been completed */
+	MappedByteBuffer regions[] = null;
+	/** offset[rank] = the position of the set's record, or NONE */
+	final long offset[];
+	/** count[rank] = the number of vertices in the set's frontier */
+	final int count[];
+	/** capGap[rank] = the frontier's {@link FrontierInfo#capGap};
+	    only kept with {@link VSMethod#CAP} */
+	final double capGap[];
+
+	LayerFile(int layer, int size) throws IOException {
+	    offset = new long[size];
+	    Arrays.fill(offset, NONE);
+	    count = new int[size];
+	    capGap = (context.vs == VSMethod.CAP) ? new double[size] : null;
+	    file = File.createTempFile("frontiers-L" + layer + "-", ".dat", dir);
+	    file.deleteOnExit();
+	    raf = new RandomAccessFile(file, "rw");
+	    channel = raf.getChannel();
+	}
+
+	/** Figures where the next record, of the given size, will go,
+	    starting a new region if needed.
+	    @return The record's offset in the file */
+	long allocate(long len) {
+	    if (size - regionStart[regionCnt-1] + len > REGION_SIZE) {
+		if (regionCnt == regionStart.length) {
+		    long[] a = new long[2*regionCnt];
+		    System.arraycopy(regionStart, 0, a, 0, regionCnt);
+		    regionStart = a;
+		}
+		regionStart[regionCnt++] = size;
+	    }
+	    long pos = size;
+	    size += len;
+	    return pos;
+	}
+
+	void map() throws IOException {
+	    regions = new MappedByteBuffer[regionCnt];
+	    for(int i=0; i<regionCnt; i++) {
+		long end = (i+1<regionCnt) ? regionStart[i+1] : size;
+		regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, regionStart[i], end - regionStart[i]);
+	    }
+	    // the mapping remains valid after the channel is closed
+	    raf.close();
+	    raf = null;
+	    channel = null;
+	}
+
+	/** Returns a read buffer, positioned at the given offset */
+	ByteBuffer bufferAt(long offset) {
+	    int r = Arrays.binarySearch(regionStart, 0, regionCnt, offset);
+	    if (r < 0) r = -r - 2;
+	    ByteBuffer b = regions[r].duplicate();
+	    b.order(ByteOrder.nativeOrder());
+	    b.position((int)(offset - regionStart[r]));
+	    return b;
+	}
+
+	void delete() {
+	    try {
+		if (raf != null) raf.close();
+	    } catch(IOException ex) {}
+	    raf = null;
+	    channel = null;
+	    regions = null;
+	    file.delete();
+	}
+    }
+
+    void startLayer(int layer, int size) throws DDException {
+	if (layer >= layers.length) {
+	    LayerFile[] a = new LayerFile[layer+1];
+	    System.arraycopy(layers, 0, a, 0, layers.length);
+	    layers = a;
+	}
+	if (layers[layer] != null) throw new AssertionError("Layer " + layer + " has already been started");
+	try {
+	    layers[layer] = new LayerFile(layer, size);
+	} catch(IOException ex) {
+	    throw new DDException("I/O error in the frontier store: " + ex.getMessage());
+	}
+    }
+
+    void put(int layer, int rank, FrontierInfo f) throws DDException {
+	ColumnFrontier cf = ColumnFrontier.of(f);
+	if (withE && cf.e == null) throw new IllegalArgumentException("Frontier has no cost-on-bad data");
+	try {
+	    LayerFile lf = layers[layer];
+	    if (lf.regions != null) throw new AssertionError("Layer " + layer + " has already been completed");
+	    if (lf.offset[rank] != NONE) throw new AssertionError("Frontier["+layer+"]["+rank+"] is already filled?!");
+	    final int n = cf.length();
+	    long len = 8L * n * (withE ? 3 : 2);
+	    if (len > REGION_SIZE) throw new DDException("Frontier too large for the mapped store: " + n + " vertices");
+	    lf.offset[rank] = lf.allocate(len);
+	    lf.count[rank] = n;
+	    if (lf.capGap != null) lf.capGap[rank] = cf.capGap;
+	    write(lf, cf.c, n);
+	    write(lf, cf.d, n);
+	    if (withE) write(lf, cf.e, n);
+	} catch(IOException ex) {
+	    throw new DDException("I/O error in the frontier store: " + ex.getMessage());
+	}
+    }
+
+    private void write(LayerFile lf, double a[], int n) throws IOException {
+	for(int i=0; i<n; i++) {
+	    if (!out.hasRemaining()) flush(lf);
+	    out.putDouble(a[i]);
+	}
+    }
+
+    private void flush(LayerFile lf) throws IOException {
+	out.flip();
+	while(out.hasRemaining()) lf.channel.write(out);
+	out.clear();
+    }
+
+    void endLayer(int layer) throws DDException {
+	LayerFile lf = layers[layer];
+	try {
+	    flush(lf);
+	    lf.map();
+	} catch(IOException ex) {
+	    throw new DDException("I/O error in the frontier store: " + ex.getMessage());
+	}
+    }
+
+    FrontierInfo get(int layer, int rank) {
+	LayerFile lf = (layer < layers.length) ? layers[layer] : null;
+	if (lf == null || lf.regions == null) throw new AssertionError("Layer " + layer + " is not available for reading");
+	long pos = lf.offset[rank];
+	if (pos == NONE) return null;
+	final int n = lf.count[rank];
+	DoubleBuffer b = lf.bufferAt(pos).asDoubleBuffer();
+	double c[] = new double[n], d[] = new double[n];
+	double e[] = withE ? new double[n] : null;
+	b.get(c);
+	b.get(d);
+	if (withE) b.get(e);
+	ColumnFrontier cf = new ColumnFrontier(c, e, d, context);
+	if (lf.capGap != null) cf.capGap = lf.capGap[rank];
+	return cf;
+    }
+
+    void dropLayer(int layer) {
+	if (layer >= layers.length || layers[layer] == null) return;
+	layers[layer].delete();
+	layers[layer] = null;
+    }
+
+    void close() {
+	for(int i=0; i<layers.length; i++) dropLayer(i);
+    }
+
+}
@@ -14,7 +14,7 @@ class MultiPiFusion {
 	any policies from the Frontier f[i] attached to q's i-th output
 	channels.
     */
-    static Frontier testFusion(Test q, FrontierInfo f[], FrontierContext context) {
+    static FrontierInfo testFusion(Test q, FrontierInfo f[], FrontierContext context) {
 	// How many channels in Q? 
 	int m = q.getM();
 
@@ -28,41 +28,23 @@ class MultiPiFusion {
 	    mv += fSegCount;
 	}
 
-	double qCost = q.getCost();
-
-	int used[] = new int[m];
-
-	// we start with the implicit lowest-cost (0,0) policy, and keep
-	// adding "Inspect" to the channels in the order of the decreasing 
-
-
-	// .... ratio
-	PolicySignature lastPolicy = Policy.RELEASE;
+	// All temporary arrays come from this thread's workspace
+	FusionWorkspace ws = FusionWorkspace.get();
+	ws.ensureChannels(m);
+	int used[] = ws.used;
 
 	//----------------------------------------------------
 	// Order the mv segments in the order of increasing 
 	// (b[i]/g[i]) * (delta(DetectionRate,j)/delta(Cost(pi),j)).
-	//
-	// {iOrderd[k]=i, jOrdered[k]=j} means: the k-th segment of the
-	// compound-device efficient frontier uses the j-th segment of the
-	// EF of the device attached to the i-th channel of the front-end
-	// device q. Both i and j are 0-based.
-	int iOrdered[] = new int[mv]; 
-	int jOrdered[] = new int[mv]; 
-	boolean skippable[] = new boolean[mv]; 
-
-	//double h[] = new double[m];
-	//for(int i=0; i<m; i++) {
-	//    h[i] = q.getB(i)/q.getG(i);
-	//}
 
 	// precompute delta(DetectionRate)/delta(Cost) ratios for all policies
  	// in f
-	double [][] r = new double[m][], invr = new double[m][];
+	double [][] r = ws.rr, invr = ws.invrr;
+	int segCount[] = ws.segCount;
 	for(int k=0; k<m; k++) {
 	    final int fSegCount = f[k].length() + 1;
-	    r[k] = new double[fSegCount];
-	    invr[k] = new double[fSegCount];
+	    segCount[k] = fSegCount;
+	    ws.ensureRow(k, fSegCount);
 	    for(int j=0; j<fSegCount; j++) {
 
 		double a = q.getB(k) * f[k].getIncrementInDetectionRate(j);
@@ -75,54 +57,11 @@ class MultiPiFusion {
 	    }
 	}
 
-	// used to skip some vertices that sit on virtually straight-line
-	// sections of the frontier
-	
-	final double ratioEps = 1e-14;
-	double lastRatio = 0, lastInvRatio=0;
-	
-
-	for(int pos=0; pos< mv; pos++) {
-	    // find the not-yet-"used" segment with the largest g/b ratio
-	    double maxRatio = 0;
-	    int iFound = -1;
-	    for(int i=0; i<m; i++) {
-		final int fSegCount = f[i].length() + 1;
-		if (used[i] == fSegCount) {
-		    continue;
-		} 
-		double ratio = r[i][used[i]];
-		if (iFound < 0 || ratio > maxRatio) {
-		    iFound = i;
-		    maxRatio = ratio;
-		} 
-	    }
-
-	    if (iFound < 0) throw new AssertionError("max not found?!");
-	    double invMaxRatio = invr[iFound][used[iFound]];
-	    
-	    // Was the current max (computationally) same as the
-	    // previous one?  We assume equality if either
-	    // |r1-r2|<eps, or |(1/r1)-(1/r2)|<eps, where eps=ratioEps
-	    // is a special very tight tolerance value
-
-	    boolean skipPrev = (pos > 0) &&  
-		((lastRatio <= 0.5)?
-		 (Math.abs(maxRatio-lastRatio) <ratioEps) :
-		 (Math.abs( invMaxRatio - lastInvRatio) < ratioEps));
-
-	    if (skipPrev) {
-		skippable[pos-1] = true;
-	    } else {
-		lastRatio = maxRatio;
-		lastInvRatio = invMaxRatio;
-	    }
-
-	    // record pair (i, used[i])
-	    iOrdered[pos] = iFound;
-	    jOrdered[pos] = used[iFound]++;
-	    skippable[pos] = false;
-	}
+	SegmentOrder order = ws.order;
+	order.order(m, segCount, null, null, r, invr);
+	int iOrdered[] = order.iOrdered; 
+	int jOrdered[] = order.jOrdered; 
+	boolean skippable[] = order.skippable; 
 
 	if (Frontier.debug) for(int pos=0; pos< mv; pos++) {
 		int i = iOrdered[pos];
@@ -134,9 +73,12 @@ class MultiPiFusion {
 
 
 	//----------------------------------------------------
+	// The candidate vertices are accumulated as (c0,e,delta) triples in
+	// the workspace's buffers, along with their costs at pi; see
+	// FrontierInfo.testFusion()
 	for(int i=0; i<m; i++) used[i] = 0;
-
-	PolicySignature pp[] = new PolicySignature[mv];
+	final boolean trees = !Options.signaturesOnly;
+	final double inspectCost = context.getInspectCostPi();
 	int pCnt =0;
 
 	for(int k=0; k < mv;k++) {
@@ -155,47 +97,39 @@ class MultiPiFusion {
 
 	    double delta = combiDetectionRate(q, f, used);
 
-	    if (c >= context.getInspectCostPi()) break; // reject this and the rest
-
-	    // FIXME: inelegant, but should work: if signaturesOnly==false,
-	    // we store regular Frontiers
-	    PolicySignature z = Options.signaturesOnly? 
-		new PolicySignature(c0, e, delta) : 	
-		makePolicy(q, f, used, c0, e, delta);
+	    if (c >= inspectCost) break; // reject this and the rest
 
 	    if (pCnt > 0) {
 
-		double back = pp[pCnt-1].getPolicyCost(context.pi) - c;
+		double back = ws.cost[pCnt-1] - c;
 
 		// cost equality may result from a vertical (first) segment
 		// of a ROC curve; (small) backwardation from a rounding error
 		if ( back > 0) {
 
 		    if ( back > 1e-8) {
-			String msg = "Backwardation in fusion from " +  pp[pCnt-1].toShortString2(context.pi) + " to " + z.toShortString2(context.pi);
-			//if ( pp[pCnt-1].c - z.c > 1e-6) 
-			    throw new AssertionError(msg);
-			    //else System.out.println(msg);
+			String msg = "Backwardation in fusion from " +  new PolicySignature(ws.c[pCnt-1], ws.e[pCnt-1], ws.d[pCnt-1]).toShortString2(context.pi) + " to " + new PolicySignature(c0, e, delta).toShortString2(context.pi);
+			throw new AssertionError(msg);
 		    }
 
-		    if ( z.d >  pp[pCnt-1].d) { 
+		    if ( delta >  ws.d[pCnt-1]) { 
 			// replace last element
-			pp[pCnt-1] = z;
-			continue;
-		    } else {
-			// skip
-			continue;
+			put(ws, pCnt-1, c0, e, delta, context.pi);
+			if (trees) ws.trees[pCnt-1] = makePolicy(q, f, used, c0, e, delta);
 		    }
+		    continue;
 		} 
 	    }
 
-
-	    pp[pCnt++] = z;
-
+	    ws.ensureOutput(pCnt+1);
+	    put(ws, pCnt, c0, e, delta, context.pi);
+	    // FIXME: inelegant, but should work: if signaturesOnly==false,
+	    // we store regular Frontiers
+	    if (trees) ws.trees[pCnt] = makePolicy(q, f, used, c0, e, delta);
+	    pCnt++;
 	}
 	
-	Frontier ff = new Frontier(pp, context, pCnt);
-	ff.selectNecessaryVerticesFromSortedList(); //triangleEps);
+	FrontierInfo ff = FrontierInfo.fusionResult(ws, pCnt, trees, context);
 	
 	if (Frontier.debug) {
 	    System.out.println("TestFusion: ======================");
@@ -207,6 +141,14 @@ class MultiPiFusion {
 	return ff;
     }
 
+    /** Stores a candidate vertex in the workspace's output buffers */
+    private static void put(FusionWorkspace ws, int at, double c0, double e, double d, double pi) {
+	ws.c[at] = c0;
+	ws.e[at] = e;
+	ws.d[at] = d;
+	ws.cost[at] = PolicySignature.getPolicyCost(c0, e, pi);
+    }
+
     /** Computes the total cost of the policy that has device q in front, and
 	the policy f[i].policies[ used[i]-1 ] attached to the i-th channel of
 	q. (So, used[i]=0 means: use the trivial zero-cost R policy on the
@@ -214,7 +156,7 @@ class MultiPiFusion {
     */
     static double combiCost(Test q, FrontierInfo f[], int used[], double pi) {
 	double sum = q.getCost(); // The cost of running test q
-	for(int i=0; i< used.length; i++) {
+	for(int i=0; i< f.length; i++) {
 	    if (used[i] > 0) {
 		sum += (1-pi)*q.getG(i) * f[i].getPolicyCost0(used[i]-1) +
 		    pi*q.getB(i) * f[i].getPolicyCostOnBad(used[i]-1);
@@ -225,7 +167,7 @@ class MultiPiFusion {
 
     static double combiDetectionRate(Test q, FrontierInfo f[], int used[]) {
 	double sum = 0;
-	for(int i=0; i< used.length; i++) {
+	for(int i=0; i< f.length; i++) {
 	    if (used[i] == 0) {
 	    } else if (used[i] == f[i].length()+1) {
 		sum += q.getB(i); // detect all
@@ -248,13 +190,15 @@ class MultiPiFusion {
 	from f[i] is to be attached to the i'th output
 	channel of q. Value used[i]=0 refers to RELEASE, used[i]=1 to
 	policy[0], and so on, with used[i]=f[i].policy.length meaning that
-	INSPECT is to be attached to the i'th channel of q.
+	INSPECT is to be attached to the i'th channel of q. The array may
+	be longer than f[].
      */
     static Policy makePolicy(Test q, FrontierInfo[] f, int used[], double c, double e, double d) {
-	if (q.getM() != used.length) throw new AssertionError("Length mismatch:q.getM()=" + q.getM() +", used.length=" + used.length );
-	if (used.length != f.length) throw new AssertionError("Length mismatch:f.length=" + f.length +", used.length=" + used.length );
-	PolicySignature [] outputs= new PolicySignature[used.length];
-	for(int i=0; i< used.length; i++) {
+	final int m = q.getM();
+	if (m > used.length) throw new AssertionError("Length mismatch:q.getM()=" + m +", used.length=" + used.length );
+	if (m != f.length) throw new AssertionError("Length mismatch:f.length=" + f.length +", q.getM()=" + m );
+	PolicySignature [] outputs= new PolicySignature[m];
+	for(int i=0; i< m; i++) {
 	    // An exception will be thrown if we have screwed up with types
 	    // (which we should not)
 	    outputs[i] = ((Frontier)f[i]).getPolicy(used[i]-1);
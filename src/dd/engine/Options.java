@@ -1,6 +1,7 @@
 package dd.engine;
 
 import java.io.*;
+import java.util.*;
 
 /** This class stores a few static members, which are values of
  * certain options to the frontier finder algorithm. They can be set
@@ -16,7 +17,16 @@ public class Options {
      * program */
     static final String EPS = "eps", SVG_EPS = "svgEps", MAX_DEPTH="maxDepth",
 	SIGNATURES_ONLY = "signaturesOnly", FOLD="fold", PARANOID="paranoid",
-	COMMERCE="E";
+	COMMERCE="E", THREADS="threads", FRONTIER_STORE="frontierStore",
+	SPILL_DIR="spillDir", CHECKPOINT="checkpoint", RESUME="resume",
+	SAVE_LATTICE="saveLattice", BASE_LATTICE="baseLattice",
+	CHANGED_SENSOR="changedSensor", DEADLINE="deadline", PLAN="plan",
+	MEMORY_BUDGET="memoryBudget", TIME_BUDGET="timeBudget", BEAM="beam",
+	BEAM_CHECK="beamCheck", CLUSTER="cluster", BUDGET="budget",
+	ENGINE="engine", ENGINE_CHECK="engineCheck", SWEEP="sweep",
+	SWEEP_DIR="sweepDir", LATTICE_SUBSETS="latticeSubsets",
+	LATTICE_QUERIES="latticeQueries", FRONTIER_CACHE="frontierCache",
+	VERTEX_CAP="vertexCap";
 
 
     /** The option table. Presently, no config file is used - just get options 
@@ -27,7 +37,7 @@ public class Options {
 	the overall shape of the frontier. It controls how eps is used.
      */
     static VSMethod vs = VSMethod.VM1;
-    {
+    static {
 	String q =  options.getOption( "vs", VSMethod.VM1.toString());
 	vs = VSMethod.valueOf(q);
     }
@@ -47,6 +57,16 @@ public class Options {
 	options.setOption(EPS, val);
     }
 
+    final static int defaultVertexCap = 100;
+    /** The largest number of vertices a frontier may have with {@link
+	VSMethod#CAP} vertex skipping */
+    public static int getVertexCap() {
+	return options.getOption(VERTEX_CAP, defaultVertexCap);
+    }
+    public static void setVertexCap(int n) {
+	options.setOption(VERTEX_CAP, n);
+    }
+
     /** To make generating image files easier ... */
     final static double defaultSvgEps = 5e-4; 
 
@@ -81,6 +101,294 @@ public class Options {
 	options.setOption(MAX_DEPTH, n);
     }
     
+    /** How many worker threads are used to build the frontiers of the
+	subsets of the same size in parallel. The default value, 1, means
+	that the entire computation is carried out in the calling thread.
+     */
+    public static int getThreads() {
+	return options.getOption(THREADS, 1);
+    }
+
+    /** Sets the number of worker threads used in frontier generation
+     */
+    public static void setThreads(int n) {
+	options.setOption(THREADS, n);
+    }
+
+    /** Where the frontiers of the subsets are kept during frontier
+	generation: "heap" (the default) means ordinary Java objects;
+	"mmap", memory-mapped files in the {@link #getSpillDir() spill
+	directory}. The latter is only supported with signaturesOnly=true.
+	@see FrontierStore
+     */
+    public static String getFrontierStore() {
+	return options.getOption(FRONTIER_STORE, "heap");
+    }
+
+    public static void setFrontierStore(String s) {
+	options.setOption(FRONTIER_STORE, s);
+    }
+
+    /** The directory for the files created by the "mmap" frontier
+	store. By default, the system's temporary directory.
+     */
+    public static File getSpillDir() {
+	return new File(options.getOption(SPILL_DIR, System.getProperty("java.io.tmpdir")));
+    }
+
+    public static void setSpillDir(File dir) {
+	options.setOption(SPILL_DIR, dir.getPath());
+    }
+
+    /** If not null, a frontier build saves its progress into this
+	file after completing each layer of the subset lattice, so that
+	it can be resumed later (see {@link #getResumeFile()}). This is only
+	supported with signaturesOnly=true.
+	@see Checkpoint
+     */
+    public static File getCheckpointFile() {
+	String s = options.getOption(CHECKPOINT, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    public static void setCheckpointFile(File f) {
+	options.setOption(CHECKPOINT, (f==null)? "" : f.getPath());
+    }
+
+    /** If not null, a frontier build starts from the layer saved in
+	this checkpoint file, rather than from scratch. The file must
+	have been written by a build with the same sensors and the same
+	vertex-skipping parameters.
+     */
+    public static File getResumeFile() {
+	String s = options.getOption(RESUME, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    public static void setResumeFile(File f) {
+	options.setOption(RESUME, (f==null)? "" : f.getPath());
+    }
+
+    /** If not null, {@link Frontier#buildFrontier(Test[],
+	FrontierContext, int, java.util.Vector)} saves the frontiers of all
+	subsets into this file, which can later be used for an incremental
+	build (see {@link Frontier#buildFrontierIncremental(File, Test[],
+	FrontierContext, int)}). This is only supported with
+	signaturesOnly=true.
+	@see LatticeFile
+     */
+    public static File getSaveLatticeFile() {
+	String s = options.getOption(SAVE_LATTICE, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    public static void setSaveLatticeFile(File f) {
+	options.setOption(SAVE_LATTICE, (f==null)? "" : f.getPath());
+    }
+
+    /** If not null, the frontiers of the subsets computed by {@link
+	Frontier#buildFrontier(Test[], FrontierContext, int, Vector)}
+	are looked up in, and saved into, a persistent cache in this
+	directory, which can be shared by builds with different
+	configurations. This is only supported with signaturesOnly=true.
+	@see FrontierCache
+     */
+    public static File getFrontierCacheDir() {
+	String s = options.getOption(FRONTIER_CACHE, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    public static void setFrontierCacheDir(File dir) {
+	options.setOption(FRONTIER_CACHE, (dir==null)? "" : dir.getPath());
+    }
+
+    /** If not null, the {@link Main batch application}, instead of
+	building a frontier, looks up the frontiers of these subsets of
+	the sensors in the lattice file given by {@link
+	#getBaseLatticeFile()}. The subsets are separated by
+	semicolons; each is a comma-separated list of sensor names,
+	optionally preceded by a multiplicity, as in "A,C,F;B,2*D".
+     */
+    public static String getLatticeSubsets() {
+	String s = options.getOption(LATTICE_SUBSETS, (String)null);
+	return (s==null || s.trim().equals("")) ? null : s;
+    }
+
+    /** If not null, the {@link Main batch application}, instead of
+	building a frontier, answers the queries listed in this file (in
+	the format of {@link LatticeQuery#runBatch(BufferedReader,
+	PrintStream)}), using the lattice file given by {@link
+	#getBaseLatticeFile()}.
+     */
+    public static File getLatticeQueries() {
+	String s = options.getOption(LATTICE_QUERIES, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    /** If not null, the {@link Main batch application} builds the
+	frontier incrementally, reusing the frontiers stored in this
+	lattice file by an earlier run without the last sensor of the
+	config file.
+     */
+    public static File getBaseLatticeFile() {
+	String s = options.getOption(BASE_LATTICE, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
+    /** If not negative, and {@link #getBaseLatticeFile()} is set, the
+	{@link Main batch application} assumes that the sensors are the
+	same as in the run that saved the lattice file, except that this
+	one (the index in the config file, starting from 0) has a
+	different cost or ROC curve; and only recomputes the subsets
+	including it.
+     */
+    public static int getChangedSensor() {
+	return options.getOption(CHANGED_SENSOR, -1);
+    }
+
+    /** If positive, the {@link Main batch application} runs an anytime
+	build (see {@link Frontier#buildFrontierByDeadline(Test[],
+	FrontierContext, int, long)}), which must end in this many
+	seconds.
+     */
+    public static double getDeadlineSec() {
+	return options.getOptionDouble(DEADLINE, 0);
+    }
+
+    /** If true, the {@link Main batch application} only prints the
+	{@link Planner estimated cost} of the build, without running it.
+     */
+    public static boolean getPlanOnly() {
+	return options.getOption(PLAN, false);
+    }
+
+    /** The amount of memory (in bytes) that a frontier build may use
+	for storing the frontiers of the subsets, as considered by the
+	{@link Planner}. It is given in megabytes; by default, it is
+	{@link Planner#defaultMemoryBudget()}.
+     */
+    public static long getMemoryBudget() {
+	double mb = options.getOptionDouble(MEMORY_BUDGET, 0);
+	return (mb > 0) ? (long)(mb * 1024 * 1024) : Planner.defaultMemoryBudget();
+    }
+
+    public static void setMemoryBudget(double mb) {
+	options.setOption(MEMORY_BUDGET, mb);
+    }
+
+    /** The time (in seconds) that a frontier build may take, as
+	considered by the {@link Planner}. The default, 0, means no
+	limit.
+     */
+    public static double getTimeBudgetSec() {
+	return options.getOptionDouble(TIME_BUDGET, 0);
+    }
+
+    public static void setTimeBudgetSec(double sec) {
+	options.setOption(TIME_BUDGET, sec);
+    }
+
+    /** True if the {@link Main batch application}, the GUI and the web
+	application should estimate the cost of the build with the
+	{@link Planner} before running it: that is, if {@link
+	#getPlanOnly()} is set, or a memory or time budget has been given
+	explicitly. The estimate runs probe builds of its own, so it is
+	not done by default (and the callers skip it for {@link
+	Planner#isSmall(Test[], int) small lattices} as well).
+     */
+    public static boolean getPlanRequested() {
+	return getPlanOnly() || options.getOptionDouble(MEMORY_BUDGET, 0) > 0 ||
+	    getTimeBudgetSec() > 0;
+    }
+
+    /** If positive, the {@link Main batch application} builds an
+	approximate frontier with a beam search of this width (see
+	{@link Frontier#buildFrontierBeam(Test[], FrontierContext, int,
+	int)}), instead of the exact one.
+     */
+    public static int getBeamWidth() {
+	return options.getOption(BEAM, 0);
+    }
+
+    /** If true, the {@link Main batch application}, after a beam search,
+	also builds the exact frontier, and reports how far the
+	approximate one is from it. This is only practical for
+	smaller sensor sets.
+     */
+    public static boolean getBeamCheck() {
+	return options.getOption(BEAM_CHECK, false);
+    }
+
+    /** If positive, the {@link Main batch application} folds similar
+	sensors (those whose costs and ROC curves differ by no more than
+	this) into one; see {@link SensorClustering}.
+     */
+    public static double getClusterTolerance() {
+	return options.getOptionDouble(CLUSTER, 0);
+    }
+
+    /** If not negative, the {@link Main batch application} only finds
+	the best detection rate for this budget, with a {@link
+	PointQuery}, instead of building the frontier.
+     */
+    public static double getQueryBudget() {
+	return options.getOptionDouble(BUDGET, -1);
+    }
+
+    /** The algorithm used by the {@link Main batch application} to
+	build the exact frontier: "hull" (the default), the layer-by-layer
+	merging of the subsets' frontiers of {@link
+	Frontier#buildFrontier(Test[], FrontierContext, int, Vector)};
+	or "parametric", the tracing of the frontier's vertices by {@link
+	Frontier#buildFrontierParametric(Test[], FrontierContext, int)},
+	which is much slower, and is meant for cross-checking only.
+     */
+    public static String getEngine() {
+	return options.getOption(ENGINE, "hull");
+    }
+
+    /** If true, the {@link Main batch application} builds the frontier
+	with both engines (see {@link #getEngine()}), and reports the
+	differences between the results.
+     */
+    public static boolean getEngineCheck() {
+	return options.getOption(ENGINE_CHECK, false);
+    }
+
+    /** The depths for which the {@link Main batch application} reports
+	the frontiers on the way (see {@link
+	Frontier#buildFrontierSweep(Test[], FrontierContext, int,
+	boolean[], Frontier.SweepSink)}), given as a list of numbers
+	separated by commas or spaces, or "all".
+	@param maxSetSize The largest depth that makes sense
+	@return An array where element k is true if depth k has been
+	requested, or null if no sweep has been requested
+     */
+    public static boolean[] getSweepDepths(int maxSetSize) {
+	String s = options.getOption(SWEEP, (String)null);
+	if (s==null || s.trim().equals("")) return null;
+	boolean q[] = new boolean[maxSetSize+1];
+	if (s.trim().equals("all")) {
+	    Arrays.fill(q, 1, q.length, true);
+	    return q;
+	}
+	for(String z: s.trim().split("[,\\s]+")) {
+	    int k = Integer.parseInt(z);
+	    if (k <= 0) throw new IllegalArgumentException("Sweep depths must be positive, not " + k);
+	    if (k <= maxSetSize) q[k] = true;
+	}
+	return q;
+    }
+
+    /** If not null, the {@link Main batch application} saves the
+	frontier for each depth of a sweep (see {@link
+	#getSweepDepths(int)}) into a file in this directory.
+     */
+    public static File getSweepDir() {
+	String s = options.getOption(SWEEP_DIR, (String)null);
+	return (s==null || s.equals("")) ? null : new File(s);
+    }
+
     static public boolean paranoid = options.getOption(PARANOID, false);
 
     /** If true, apply the {@link VSMethod vertex-skipping process} "early",
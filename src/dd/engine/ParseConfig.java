@@ -203,6 +203,11 @@ public final class ParseConfig extends Hashtable<String,Object> {
 	    System.out.println("get("+aName+ ")=" + get(aName));
 	    
 	}
+
+	public void setOption(String aName, String val) {
+	    put(aName, val);
+	    System.out.println("Recorded option "+aName+ "=" + val);
+	}
 	
 	/**
 	 * Gets the requested integer value from the hash table or from the Java system property aName.
@@ -0,0 +1,475 @@
+package dd.engine;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+/** A pre-run estimate of the cost of a frontier build: how many
+    subsets will be processed, how many of them will be live at the
+    same time, how many vertices their frontiers will have, and how
+    much memory and time the build will take. This allows the user
+    (or the {@link Main batch application}, the {@link dd.gui.DDGUI
+    GUI}, and the web application) to find out, before a build is
+    started, whether it will take seconds or days, and whether it
+    will fit into the Java heap; and, if it won't, to pick eps and
+    maxDepth values that will make it fit (see {@link
+    #recommend(Test[], FrontierContext, int, int, long, double)}).
+
+    <p>The number of sets in each layer of the subset lattice is known
+    exactly (see {@link SensorLattice#layerSize(int)}). The number of
+    vertices of their frontiers, however, depends on the sensors' ROC
+    curves, on the vertex-skipping method and on eps, and is measured
+    by a small calibration run (a "probe"): the frontiers of all
+    subsets of a few sensors, taken evenly from t[], are actually
+    built, with the same context, as long as the number of such
+    subsets remains small. The average number of vertices in each
+    layer of the probe is used for the same layer of the full lattice;
+    for deeper layers, it is extrapolated from the last two layers of
+    the probe, assuming that the growth rate of the vertex count keeps
+    decreasing as it did between them. The probe also measures the
+    time the fusion takes per vertex; the time to process a set of
+    size s is taken to be proportional to s times the number of
+    vertices of a set of size s-1 times the average number of vertices
+    of a sensor's ROC curve. All of this is approximate: the estimates
+    are good for telling a 10-second build from a 10-hour one, not
+    much more.
+
+    <p>Since the frontiers are built layer by layer, and a layer is
+    dropped as soon as the next one is complete, the memory needed is
+    that for the two largest adjacent layers. With the "mmap" {@link
+    FrontierStore}, the frontiers themselves are on the disk, and
+    only the index is held in the heap.
+ */
+public class Planner {
+
+    /** The calibration run stops adding sensors once the number of
+	subsets to build would exceed this */
+    static final long PROBE_SETS = 2000;
+    /** ... and stops adding layers after so much time (msec) */
+    static final long PROBE_MSEC = 2000;
+    /** The cost of looking up a subset's frontier, in the units of
+	vertices fused */
+    static final double LOOKUP_WORK = 4;
+    /** How many times the probe is run before the timed run */
+    static final int WARMUP_RUNS = 5;
+
+    /** Approximate sizes (in bytes) of a stored frontier: a fixed
+	overhead, plus so much per vertex */
+    static final int FRONTIER_OVERHEAD = 80, VERTEX_SIGNATURE_BYTES=16,
+	VERTEX_E_BYTES = 8, VERTEX_TREE_BYTES = 120, MMAP_INDEX_BYTES=12;
+
+    final Test t[];
+    final FrontierContext context;
+    /** The number of pi values (1 unless an extremal surface is built) */
+    final int piCnt;
+    /** The actual depth of the build, i.e. the size of the largest
+	sets, with maxDepth taken into account */
+    final int depth;
+    /** Whether the frontiers are stored in the heap, or in mapped files */
+    final boolean mapped;
+
+    /** sets[s] = the number of sets of size s */
+    final double sets[];
+    /** vertices[s] = the estimated average number of vertices in the
+	frontier of a set of size s */
+    final double vertices[];
+    /** msec[s] = the estimated time to process the layer of sets of size s */
+    final double msec[];
+    /** The number of layers whose vertex counts have been measured,
+	rather than extrapolated */
+    final int probeDepth;
+
+    /** Estimates the cost of a build of the frontier for the sensors
+	t[] (which are supposed to have already been {@link
+	Main#approximateSensors(Test[]) approximated}, if that is
+	going to be done), with the options currently set in {@link
+	Options} (signaturesOnly, frontier store, threads).
+	@param context The context of the build (for a multi-pi build,
+	the context for pi=0)
+	@param maxDepth The maximum depth of the build; a negative value
+	means no limit
+	@param piCnt The number of pi values; 1 for an ordinary build
+     */
+    public Planner(Test t[], FrontierContext context, int maxDepth, int piCnt) {
+	this.t = t;
+	this.context = context;
+	this.piCnt = Math.max(1, piCnt);
+	SensorLattice lattice = new SensorLattice(t);
+	int m = lattice.maxSetSize();
+	depth = (maxDepth < 0) ? m : Math.min(m, maxDepth);
+	mapped = Options.getFrontierStore().equals("mmap");
+
+	sets = new double[depth+1];
+	for(int s=1; s<=depth; s++) sets[s] = lattice.layerSize(s);
+
+	// the calibration run
+	vertices = new double[depth+1];
+	msec = new double[depth+1];
+	double layerMsec[] = new double[depth+1];
+	Test[] q = pickProbe(t, depth);
+	// the first runs warm up the JIT compiler; only the last one
+	// is timed
+	long warmupStart = System.currentTimeMillis();
+	for(int i=0; i<WARMUP_RUNS && System.currentTimeMillis() - warmupStart < PROBE_MSEC/4; i++) {
+	    probe(q, new double[depth+1], new double[depth+1]);
+	}
+	probeDepth = probe(q, vertices, layerMsec);
+
+	// extrapolating the vertex counts: (r(s) - 1) = a*(s-1)^(-b),
+	// where r(s) = vertices[s]/vertices[s-1]
+	double b = 0.5;
+	if (probeDepth >= 3) {
+	    double g1 = vertices[probeDepth-1]/vertices[probeDepth-2] - 1,
+		g2 = vertices[probeDepth]/vertices[probeDepth-1] - 1;
+	    if (g1 > 0 && g2 > 0) {
+		b = Math.log(g1/g2) / Math.log((probeDepth-1.0)/(probeDepth-2.0));
+		b = Math.max(0, Math.min(1, b));
+	    }
+	}
+	double g = (probeDepth >= 2) ?
+	    Math.max(0, vertices[probeDepth]/vertices[probeDepth-1] - 1) : 1;
+	for(int s=probeDepth+1; s<=depth; s++) {
+	    double gs = g * Math.pow((probeDepth-1.0)/(s-1.0), b);
+	    vertices[s] = vertices[s-1] * (1 + gs);
+	}
+
+	// the time per unit of work, from the probe
+	double work = 0, time = 0;
+	for(int s=2; s<=probeDepth; s++) {
+	    work += layerWork(s, probeSets[s]);
+	    time += layerMsec[s];
+	}
+	double tau = (work > 0) ? time/work : 0;
+	int threads = Math.max(1, Options.getThreads());
+	for(int s=2; s<=depth; s++) {
+	    msec[s] = tau * layerWork(s, sets[s]) * this.piCnt / threads;
+	}
+    }
+
+    /** Is the lattice of the build so small that the calibration run
+	would cover all of it? For such a build, making an estimate
+	would take longer than the build itself (the probe is run several
+	times), and there is nothing to worry about anyway, so the
+	callers should just go ahead with the build.
+	@param maxDepth The maximum depth of the build; a negative value
+	means no limit
+     */
+    public static boolean isSmall(Test t[], int maxDepth) {
+	SensorLattice lattice = new SensorLattice(t);
+	int m = lattice.maxSetSize();
+	int depth = (maxDepth < 0) ? m : Math.min(m, maxDepth);
+	return lattice.countSets(depth) <= PROBE_SETS;
+    }
+
+    /** The number of sets in each layer of the probe's lattice */
+    private double probeSets[];
+
+    /** The amount of work for a layer of cnt sets of size s: for each
+	set, each of the s subsets one sensor smaller is looked up
+	(which takes about as long as the fusion of a few vertices),
+	and fused with a sensor.
+     */
+    private double layerWork(int s, double cnt) {
+	return cnt * s * (LOOKUP_WORK + vertices[s-1] * vertices[1]);
+    }
+
+    /** Picks the sensors for the calibration run: as many as possible
+	(up to all of them), evenly spread over t[], while the number
+	of subsets to build stays within {@link #PROBE_SETS}.
+     */
+    private static Test[] pickProbe(Test t[], int depth) {
+	Test[] best = null;
+	for(int k=1; k<=t.length; k++) {
+	    Test[] q = new Test[k];
+	    for(int i=0; i<k; i++) q[i] = t[(int)((long)i * t.length / k)];
+	    SensorLattice lattice = new SensorLattice(q);
+	    if (best != null &&
+		lattice.countSets(Math.min(depth, lattice.maxSetSize())) > PROBE_SETS) break;
+	    best = q;
+	}
+	return best;
+    }
+
+    /** Builds the frontiers of all subsets of the sensors q[] (up to
+	the depth of the build), recording the average vertex count of
+	each layer, and the time spent on each layer.
+	@return The number of layers built
+     */
+    private int probe(Test q[], double v[], double layerMsec[]) {
+	SensorLattice lattice = new SensorLattice(q);
+	int d = Math.min(depth, lattice.maxSetSize());
+	probeSets = new double[d+1];
+	if (d < 1) return 0;
+	HeapFrontierStore store = new HeapFrontierStore();
+	long start = System.currentTimeMillis();
+
+	probeSets[1] = lattice.layerSize(1);
+	store.startLayer(1, (int)probeSets[1]);
+	int cnt = 0;
+	for(int i=0; i<q.length; i++) {
+	    if (q[i].getNCopies()==0) continue;
+	    Frontier f = new Frontier(q[i], context);
+	    store.put(1, (int)lattice.rank(lattice.oneSensorSet(i)), f);
+	    v[1] += f.length();
+	    cnt++;
+	}
+	if (cnt == 0) return 0;
+	v[1] /= cnt;
+	// an empty frontier would mess up the extrapolation
+	v[1] = Math.max(1, v[1]);
+
+	int s = 2;
+	for(; s<=d; s++) {
+	    if (s > 2 && System.currentTimeMillis() - start > PROBE_MSEC) break;
+	    long layerStart = System.nanoTime();
+	    probeSets[s] = lattice.layerSize(s);
+	    store.startLayer(s, (int)probeSets[s]);
+	    SensorSet ss = lattice.firstSetOfSize(s);
+	    int rank = 0;
+	    do {
+		FrontierInfo f = Frontier.buildSubsetFrontier(ss, q, store);
+		store.put(s, rank++, f);
+		v[s] += f.length();
+	    } while(ss.transformToNextSetOfSameSize());
+	    v[s] = Math.max(v[s-1], v[s]/rank);
+	    layerMsec[s] = (System.nanoTime() - layerStart) * 1e-6;
+	    store.dropLayer(s-1);
+	}
+	return s-1;
+    }
+
+    /** The size of the largest sets the build will process */
+    public int getDepth() { return depth; }
+
+    /** The total number of (non-empty) subsets the build will process */
+    public double totalSets() {
+	double sum = 0;
+	for(int s=1; s<=depth; s++) sum += sets[s];
+	return sum;
+    }
+
+    /** The estimated average number of vertices in the frontiers of
+	the largest sets (which is a rough estimate of the size of the
+	final frontier as well) */
+    public double finalVertices() {
+	return vertices[depth];
+    }
+
+    /** The estimated memory (or, with the mmap store, disk space)
+	needed for the frontiers of one layer */
+    private double layerBytes(int s) {
+	if (s < 1 || s > depth) return 0;
+	int perVertex = Options.signaturesOnly ? VERTEX_SIGNATURE_BYTES :
+	    VERTEX_TREE_BYTES;
+	if (piCnt > 1) perVertex += VERTEX_E_BYTES;
+	return piCnt * sets[s] * (FRONTIER_OVERHEAD + perVertex * vertices[s]);
+    }
+
+    /** The layer s for which the layers s-1 and s, which are live at
+	the same time, hold the largest number of sets */
+    private int peakLayer(int d) {
+	int best = 1;
+	for(int s=2; s<=d; s++) {
+	    if (sets[s]+sets[s-1] > sets[best]+sets[best-1]) best = s;
+	}
+	return best;
+    }
+
+    /** The largest number of sets whose frontiers are kept at the same time */
+    public double peakLiveSets() {
+	int s = peakLayer(depth);
+	return sets[s] + sets[s-1];
+    }
+
+    /** The estimated peak amount of heap memory used by the stored
+	frontiers, for a build of depth d */
+    private double peakBytes(int d) {
+	double best = 0;
+	for(int s=1; s<=d; s++) {
+	    double b = mapped ? piCnt * MMAP_INDEX_BYTES * (sets[s] + sets[s-1]) :
+		layerBytes(s) + layerBytes(s-1);
+	    best = Math.max(best, b);
+	}
+	return best;
+    }
+
+    /** The estimated peak amount of heap memory used by the stored
+	frontiers */
+    public double peakBytes() {
+	return peakBytes(depth);
+    }
+
+    /** The estimated peak amount of disk space used by the "mmap"
+	store (0 if the frontiers are kept in the heap) */
+    public double peakDiskBytes() {
+	if (!mapped) return 0;
+	double best = 0;
+	for(int s=1; s<=depth; s++) {
+	    best = Math.max(best, layerBytes(s) + layerBytes(s-1));
+	}
+	return best;
+    }
+
+    /** The estimated run time (wall clock) for a build of depth d */
+    private double totalMsec(int d) {
+	double sum = 0;
+	for(int s=1; s<=d; s++) sum += msec[s];
+	return sum;
+    }
+
+    /** The estimated run time of the build, in milliseconds (wall
+	clock, taking into account the number of threads) */
+    public double totalMsec() {
+	return totalMsec(depth);
+    }
+
+    /** Would the build fit into the given budgets?
+	@param memBytes The amount of memory available for the
+	frontiers
+	@param timeMsec The time available; 0 means no limit
+     */
+    public boolean fits(long memBytes, double timeMsec) {
+	return maxDepthFor(memBytes, timeMsec) == depth;
+    }
+
+    /** The largest depth (up to the depth of this build) for which
+	a build with the same sensors and context would fit into the given
+	budgets.
+	@param timeMsec The time available; 0 means no limit
+	@return The depth, or 0 if even the single-sensor frontiers
+	won't fit
+     */
+    public int maxDepthFor(long memBytes, double timeMsec) {
+	int d = 0;
+	while(d < depth && peakBytes(d+1) <= memBytes &&
+	      (timeMsec <= 0 || totalMsec(d+1) <= timeMsec)) d++;
+	return d;
+    }
+
+    /** The memory budget to use when none has been specified: the
+	Java heap size, with some room left for everything else */
+    public static long defaultMemoryBudget() {
+	return Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    /** Finds eps and maxDepth values with which the frontier for the
+	given sensors can be built within the given memory and time
+	budgets. The eps values tried are the context's own eps, then
+	10, 100, ... times as large, up to 0.01; for each of them, the
+	largest depth (up to maxDepth) that fits is found. The result is
+	the plan with the smallest eps that allows the full depth, or,
+	if none does, the one that allows the largest depth.
+
+	@param sensors The original (not approximated) sensors. They are
+	approximated with each eps value tried, if {@link
+	Options#epsAppliesToSensors} is set.
+	@param timeMsec The time budget; 0 means no limit
+	@return The plan for the recommended settings (whose {@link
+	#getEps()} and {@link #getDepth()} give the eps and maxDepth to
+	use), or null if even the 1-sensor frontiers won't fit
+     */
+    public static Planner recommend(Test sensors[], FrontierContext context,
+				    int maxDepth, int piCnt,
+				    long memBytes, double timeMsec) {
+	Planner best = null;
+	int bestDepth = 0;
+	double eps = (context.eps > 0) ? context.eps : 1e-6;
+	for(; eps <= 0.01 * (1 + 1e-9); eps *= 10) {
+	    FrontierContext c = new FrontierContext(context.multiPi, context.pi, context.vs, eps, context.vertexCap);
+	    Test[] t = sensors;
+	    if (Options.epsAppliesToSensors) {
+		t = new Test[sensors.length];
+		for(int i=0; i<t.length; i++) t[i] = sensors[i].approximate(c.vs, eps);
+	    }
+	    Planner p = new Planner(t, c, maxDepth, piCnt);
+	    int d = p.maxDepthFor(memBytes, timeMsec);
+	    if (d > bestDepth) {
+		best = (d == p.depth) ? p : new Planner(t, c, d, piCnt);
+		bestDepth = d;
+	    }
+	    if (d == p.depth) break;
+	}
+	return best;
+    }
+
+    /** Checks whether the planned build would fit into the given
+	budgets, and, if it wouldn't, explains why, and suggests eps
+	and maxDepth values with which it would (as per {@link
+	#recommend(Test[], FrontierContext, int, int, long, double)}).
+	@param sensors The original (not approximated) sensors
+	@param timeMsec The time budget; 0 means no limit
+	@return null if the build fits, or a message to show to the user
+     */
+    public String checkBudget(Test sensors[], long memBytes, double timeMsec) {
+	if (fits(memBytes, timeMsec)) return null;
+	String msg = "The frontier build is estimated to need ca. " +
+	    formatBytes(peakBytes()) + " of memory (available: " +
+	    formatBytes(memBytes) + ")";
+	if (timeMsec > 0) {
+	    msg += " and ca. " + formatMsec(totalMsec()) +
+		" (available: " + formatMsec(timeMsec) + ")";
+	}
+	msg += ". ";
+	Planner rec = recommend(sensors, context, depth, piCnt, memBytes, timeMsec);
+	if (rec == null) {
+	    msg += "It won't fit with any eps up to 0.01 and any maxDepth; please use fewer sensors.";
+	} else {
+	    msg += "It would fit with eps=" + rec.getEps() + " and maxDepth=" + rec.getDepth() + ".";
+	}
+	return msg;
+    }
+
+    /** The eps value of the planned build */
+    public double getEps() { return context.eps; }
+
+    /** Formats a number of bytes, in KB, MB, or GB */
+    static String formatBytes(double b) {
+	NumberFormat fmt = new DecimalFormat("0.#");
+	if (b < 1024 * 1024) return fmt.format(b/1024) + " KB";
+	if (b < 1024 * 1024 * 1024) return fmt.format(b/(1024 * 1024)) + " MB";
+	return fmt.format(b/(1024 * 1024 * 1024)) + " GB";
+    }
+
+    /** Formats a time interval, in msec, sec, min, hours or days */
+    static String formatMsec(double ms) {
+	NumberFormat fmt = new DecimalFormat("0.#");
+	if (ms < 1000) return fmt.format(ms) + " msec";
+	if (ms < 60 * 1000) return fmt.format(ms/1000) + " sec";
+	if (ms < 3600 * 1000) return fmt.format(ms/(60*1000)) + " min";
+	if (ms < 24 * 3600 * 1000) return fmt.format(ms/(3600*1000)) + " hours";
+	return fmt.format(ms/(24 * 3600 * 1000)) + " days";
+    }
+
+    /** Formats a count: as a plain (grouped) integer, unless it is
+	too large for that to be readable */
+    static String formatCount(double n) {
+	if (n < 1e6) return new DecimalFormat("#,##0").format(n);
+	return new DecimalFormat("0.###E0").format(n);
+    }
+
+    /** A one-line summary of the estimate */
+    public String summary() {
+	return "Plan: depth=" + depth + ", eps=" + context.eps +
+	    ", " + formatCount(totalSets()) + " subsets, peak " +
+	    formatCount(peakLiveSets()) + " live, ca. " +
+	    formatBytes(peakBytes()) + (mapped ? " heap + " + formatBytes(peakDiskBytes()) + " disk" : "") +
+	    ", ca. " + formatMsec(totalMsec()) +
+	    "; ca. " + Math.round(finalVertices()) + " vertices per frontier of the largest sets";
+    }
+
+    /** Prints the estimate, layer by layer */
+    public void print(PrintStream out) {
+	out.println("Layer\tSets\tVertices/set\tMemory\tTime");
+	for(int s=1; s<=depth; s++) {
+	    out.println("" + s + "\t" + formatCount(sets[s]) + "\t" +
+			Math.round(vertices[s]) + (s<=probeDepth ? "" : " (extrapolated)") + "\t" +
+			formatBytes(layerBytes(s)) + "\t" + formatMsec(msec[s]));
+	}
+	out.println(summary());
+    }
+
+    public String toString() {
+	return summary();
+    }
+
+}
@@ -0,0 +1,667 @@
+package dd.engine;
+
+import java.util.*;
+
+/** Answers the question "what is the best detection rate for the
+    budget B?" without keeping the frontiers of all subsets.
+
+    <p>A point of the frontier can be found via its supporting line:
+    for a slope &lambda;, the policy maximizing d - &lambda;c is a
+    vertex of the frontier, and the maximum, as a function of
+    &lambda;, is the frontier's <em>support function</em> H(&lambda;).
+    At pi=0, the support function of the set of policies that use
+    sensors from the set U satisfies a simple recursion. A policy
+    either is trivial (RELEASE, with c=d=0, or INSPECT), or applies
+    some sensor q from U first, and then, in each channel i of q, some
+    policy using the sensors of U\q. Since the channel passes the
+    fraction b<sub>i</sub> of bad items and g<sub>i</sub> of good
+    ones, its contribution to d - &lambda;c is
+    b<sub>i</sub>d<sub>i</sub> - &lambda;g<sub>i</sub>c<sub>i</sub> =
+    b<sub>i</sub>(d<sub>i</sub> -
+    (&lambda;g<sub>i</sub>/b<sub>i</sub>)c<sub>i</sub>), and thus
+
+    <center>
+    H<sub>U</sub>(&lambda;) = max( 0, 1-&lambda;c<sub>I</sub>,
+    max<sub>q in U</sub> [ -&lambda;cost<sub>q</sub> + sum<sub>i</sub>
+    b<sub>i</sub>H<sub>U\q</sub>(&lambda;g<sub>i</sub>/b<sub>i</sub>)])
+    </center>
+
+    <p>Note that the channels of the same sensor call for the support
+    function of the smaller set at different slopes, so a single
+    number per subset, which is what a dynamic programming for a
+    fixed &lambda; would store, does not give the exact optimum.
+    However, a set U of size s can only be asked for
+    H<sub>U</sub> at the slopes &lambda; times a product of
+    g<sub>i</sub>/b<sub>i</sub> over the maxDepth-s sensors removed on
+    the way down to it, so all those slopes lie in a known window.
+    The slopes at which one vertex of U's frontier is optimal form an
+    interval, so it is enough to know the vertices whose intervals
+    meet the window. A {@link #sweep(double, double) sweep} for the
+    slopes [&lambda;<sub>1</sub>, &lambda;<sub>2</sub>] thus goes
+    through the lattice layer by layer, as {@link
+    Frontier#buildFrontier(Test[], FrontierContext, int, Vector)}
+    does, but keeps for each subset only the vertices its window
+    needs (at the top, for a single &lambda;, just the one optimal
+    vertex). For each sensor q, the candidates are found by merging
+    the channels' pieces of the frontier of U\q in the order of their
+    slopes (i.e. as a Minkowski sum), which only visits the part of
+    each piece that the window reaches. Everything is kept in flat
+    arrays; no policy objects are built during the sweep.
+
+    <p>The cost and detection rate of the vertices of a layer are
+    dropped as soon as the next layer is done (as with fastPurge in
+    the frontier builds). All that is kept for each vertex is its
+    "argmax": the sensor it applies first, and the vertex of the
+    smaller set it uses in each channel. After the sweep, the
+    policies that are actually needed (e.g. the two that bracket the
+    budget) are rebuilt from these records.
+
+    <p>The vertex selection is that of the frontier builds (see {@link
+    Frontier#selectNecessaryVertices(double[], double[], int,
+    FrontierContext, int[])}), with the context's eps. It is only
+    available for pi=0.
+ */
+public class PointQuery {
+
+    private final Test t[];
+    private final FrontierContext context;
+    private final SensorLattice lattice;
+    /** How many distinct sensors a policy may use */
+    private final int maxDepth;
+    /** The cost and detection rate of the INSPECT policy */
+    private final double inspectCost, inspectD;
+    /** The context without vertex skipping, for the intermediate
+	hulls; the context's own selection is only applied to the
+	final hull of each set */
+    private final FrontierContext exact;
+
+    /** The smallest and largest g/b ratio over the channels of each
+	sensor that pass both good and bad items (only those channels
+	ask the smaller set for its support function); NaN if there
+	are no such channels */
+    private final double minRatio[], maxRatio[];
+    /** The sensors that have such channels, in the increasing order of
+	minRatio, and in the decreasing order of maxRatio */
+    private final int byMinRatio[], byMaxRatio[];
+    /** The fractions of good and bad items in each channel of each
+	sensor, and their ratio g/b (NaN if either is 0) */
+    private final double good[][], bad[][], ratio[][];
+
+    /** The frontier pieces of all sets of one size, found by the last
+	sweep. The vertices of the set with rank r are off[r] thru
+	off[r+1]-1, in the order of increasing cost. For each vertex,
+	first[] is the sensor applied first, and child[childOff[v]+i]
+	is the index (among those of the set without that sensor) of
+	the vertex used in its i-th channel, -1 standing for RELEASE
+	and the number of the set's vertices for INSPECT. The costs and
+	detection rates, c[] and d[], are only kept until the next
+	layer is done.
+     */
+    private static class Layer {
+	final int off[];
+	double c[] = new double[16], d[] = new double[16];
+	int first[] = new int[16], childOff[] = new int[17], child[] = new int[32];
+	/** How many vertices, and child entries, are stored */
+	int size = 0, childSize = 0;
+
+	Layer(int nSets) {
+	    off = new int[nSets + 1];
+	}
+
+	/** Appends a vertex, whose children are ptr[0..m-1] */
+	void add(double _c, double _d, int j, int ptr[], int m) {
+	    if (size == c.length) {
+		int len = 2 * size;
+		c = grow(c, len);
+		d = grow(d, len);
+		first = grow(first, len);
+		childOff = grow(childOff, len + 1);
+	    }
+	    if (childSize + m > child.length) {
+		child = grow(child, Math.max(childSize + m, 2 * child.length));
+	    }
+	    c[size] = _c;
+	    d[size] = _d;
+	    first[size] = j;
+	    childOff[size] = childSize;
+	    for(int i=0; i<m; i++) child[childSize++] = ptr[i];
+	    size++;
+	}
+
+	/** Drops the costs and detection rates, which are only needed
+	    while the next layer is being computed */
+	void dropValues() {
+	    c = d = null;
+	}
+    }
+
+    /** The layers computed by the last sweep, indexed by the set size */
+    private Layer layers[] = null;
+
+    /** The policies rebuilt since the last sweep, keyed by the set size
+	(in the upper half) and the index of the vertex in its layer, so
+	that the same subtree is only built once */
+    private final HashMap<Long,PolicySignature> rebuilt = new HashMap<Long,PolicySignature>();
+
+    /** The frontier of the top layer's sets (all sets of size
+	maxDepth) found by the last sweep, as the vertices that are
+	optimal for some slope in its window: their costs, detection
+	rates, and the rank and index of each one in the top layer */
+    private double topC[] = new double[16], topD[] = new double[16];
+    private long topRank[] = new long[16];
+    private int topIdx[] = new int[16];
+    private int topSize = 0;
+
+    //---- Scratch arrays for the candidates of a single set
+    private double candC[] = new double[16], candD[] = new double[16];
+    private int candFirst[] = new int[16], candChildOff[] = new int[16],
+	candChild[] = new int[32];
+    private long candRank[] = new long[16];
+    private int candSize = 0, candChildSize = 0;
+    private int order[] = new int[16], kept[] = new int[16];
+    private double selC[] = new double[16], selD[] = new double[16];
+    /** The convex hull of the candidates added so far, as their
+	indexes, in the order of increasing cost */
+    private int hull[] = new int[16];
+    private int hullSize = 0;
+    /** The chain used in fuse(): its vertices, and its edges' slopes */
+    private double chainC[] = new double[16], chainD[] = new double[16],
+	chainSlope[] = new double[16];
+    /** Per-channel pointers into the chain */
+    private int ptr[] = new int[0];
+
+    /** Statistics */
+    private int sweepCnt = 0;
+    private long setCnt = 0, vertexCnt = 0;
+
+    /** @param t The sensors
+	@param maxDepth The largest number of distinct sensors a policy
+	may use (a negative value means no limit), as in {@link
+	Frontier#buildFrontier(Test[], FrontierContext, int, Vector)}
+     */
+    public PointQuery(Test _t[], FrontierContext _context, int _maxDepth) {
+	if (_context.multiPi || _context.pi != 0) throw new IllegalArgumentException("Point queries are only supported at pi=0");
+	t = _t;
+	context = _context;
+	lattice = new SensorLattice(t);
+	final int n = lattice.maxSetSize();
+	maxDepth = (_maxDepth < 0) ? n : Math.min(n, _maxDepth);
+	inspectCost = context.getInspectCostPi();
+	inspectD = context.INSPECT.d;
+	exact = new FrontierContext(false, 0, context.vs, 0);
+
+	minRatio = new double[t.length];
+	maxRatio = new double[t.length];
+	good = new double[t.length][];
+	bad = new double[t.length][];
+	ratio = new double[t.length][];
+	int cnt = 0, m = 0;
+	for(int j=0; j<t.length; j++) {
+	    minRatio[j] = maxRatio[j] = Double.NaN;
+	    m = Math.max(m, t[j].getM());
+	    good[j] = new double[t[j].getM()];
+	    bad[j] = new double[t[j].getM()];
+	    ratio[j] = new double[t[j].getM()];
+	    for(int i=0; i<t[j].getM(); i++) {
+		double b = bad[j][i] = t[j].getB(i), g = good[j][i] = t[j].getG(i);
+		ratio[j][i] = Double.NaN;
+		if (b == 0 || g == 0) continue;
+		double r = ratio[j][i] = g / b;
+		if (!(minRatio[j] <= r)) minRatio[j] = r;
+		if (!(maxRatio[j] >= r)) maxRatio[j] = r;
+	    }
+	    if (!Double.isNaN(minRatio[j])) cnt++;
+	}
+	byMinRatio = sortedSensors(cnt, minRatio, 1);
+	byMaxRatio = sortedSensors(cnt, maxRatio, -1);
+	ptr = new int[m];
+    }
+
+    /** The cnt sensors for which key[] is not NaN, in the order of
+	increasing sign*key */
+    private int[] sortedSensors(int cnt, final double key[], final int sign) {
+	Integer a[] = new Integer[cnt];
+	int k = 0;
+	for(int j=0; j<key.length; j++) {
+	    if (!Double.isNaN(key[j])) a[k++] = j;
+	}
+	Arrays.sort(a, new Comparator<Integer>() {
+		public int compare(Integer x, Integer y) {
+		    return (int)Math.signum(sign * (key[x] - key[y]));
+		}
+	    });
+	int b[] = new int[cnt];
+	for(k=0; k<cnt; k++) b[k] = a[k];
+	return b;
+    }
+
+    /** The smallest (or largest) product of the ratios of the k
+	sensors that may be removed from the top set down to u, taking
+	for each sensor its smallest (largest) ratio.
+	@param sorted byMinRatio or byMaxRatio
+	@param key minRatio or maxRatio
+	@return The product, or NaN if u cannot be reached, i.e. there
+	are fewer than k such sensors outside of u
+     */
+    private double reach(SensorSet u, int k, int sorted[], double key[]) {
+	double p = 1;
+	for(int j: sorted) {
+	    if (k == 0) break;
+	    int avail = Math.min(k, lattice.maxCnt[j] - u.cnt[j]);
+	    for(int v=0; v<avail; v++) p *= key[j];
+	    k -= avail;
+	}
+	return (k > 0) ? Double.NaN : p;
+    }
+
+    /** Goes through the lattice layer by layer, finding for each set
+	the vertices of its frontier which can be optimal at the slopes
+	it may be asked for, starting with the slopes [lambda1, lambda2]
+	at the top. The results are in layers[] (for rebuilding
+	policies) and topC[] etc.
+	@param lambda1 The smallest slope of interest, non-negative
+	@param lambda2 The largest slope of interest; may be infinite
+     */
+    private void sweep(double lambda1, double lambda2) throws DDException {
+	sweepCnt++;
+	rebuilt.clear();
+	layers = new Layer[maxDepth + 1];
+	// The empty set only has the trivial policies
+	layers[0] = new Layer(1);
+	for(int s=1; s<=maxDepth; s++) {
+	    Layer prev = layers[s-1], cur = new Layer(Frontier.layerSize(lattice, s));
+	    SensorSet u = lattice.firstSetOfSize(s);
+	    int r = 0;
+	    do {
+		cur.off[r++] = cur.size;
+		double lo = lambda1, hi = lambda2;
+		if (s < maxDepth) {
+		    // Widened a little, so that the slopes the sets above
+		    // ask for are within the window in spite of rounding
+		    double a = reach(u, maxDepth - s, byMinRatio, minRatio),
+			b = reach(u, maxDepth - s, byMaxRatio, maxRatio);
+		    if (Double.isNaN(a)) continue; // never asked
+		    lo = lambda1 * a * (1 - 1e-9);
+		    hi = lambda2 * b * (1 + 1e-9);
+		}
+		candSize = candChildSize = hullSize = 0;
+		for(int j=0; j<t.length; j++) {
+		    if (u.cnt[j] == 0) continue;
+		    u.cnt[j]--;
+		    int rank = (int)lattice.rank(u);
+		    u.cnt[j]++;
+		    int from = candSize;
+		    fuse(j, prev, prev.off[rank], prev.off[rank+1], lo, hi);
+		    addRun(from, exact, lo, hi);
+		}
+		addRun(candSize, context, lo, hi);
+		for(int k=0; k<hullSize; k++) {
+		    int x = hull[k];
+		    int m = t[candFirst[x]].getM();
+		    for(int i=0; i<m; i++) ptr[i] = candChild[candChildOff[x] + i];
+		    cur.add(candC[x], candD[x], candFirst[x], ptr, m);
+		}
+		setCnt++;
+	    } while(u.transformToNextSetOfSameSize());
+	    cur.off[r] = cur.size;
+	    vertexCnt += cur.size;
+	    // fastPurge: the smaller sets' vertices are no longer needed
+	    prev.dropValues();
+	    layers[s] = cur;
+	}
+
+	// The top frontier: the convex hull over all top sets
+	Layer top = layers[maxDepth];
+	candSize = candChildSize = hullSize = 0;
+	for(int r=0; r<top.off.length-1; r++) {
+	    int from = candSize;
+	    for(int v=top.off[r]; v<top.off[r+1]; v++) {
+		addCandidate(top.c[v], top.d[v], v - top.off[r], r, 0);
+	    }
+	    addRun(from, context, lambda1, lambda2);
+	}
+	topSize = 0;
+	for(int k=0; k<hullSize; k++) {
+	    int x = hull[k];
+	    if (topSize == topC.length) {
+		topC = grow(topC, 2 * topSize);
+		topD = grow(topD, 2 * topSize);
+		topIdx = grow(topIdx, 2 * topSize);
+		long a[] = new long[2 * topSize];
+		System.arraycopy(topRank, 0, a, 0, topSize);
+		topRank = a;
+	    }
+	    topC[topSize] = candC[x];
+	    topD[topSize] = candD[x];
+	    topIdx[topSize] = candFirst[x];
+	    topRank[topSize] = candRank[x];
+	    topSize++;
+	}
+    }
+
+    /** Adds the candidates that apply the j-th sensor first and are
+	optimal somewhere in the slope window [lo, hi]: the vertices of
+	the Minkowski sum of the channels' (scaled) pieces of the
+	frontier of the set without that sensor, stored as vertices
+	from..to-1 of the layer a. They come in the order of increasing
+	cost.
+     */
+    private void fuse(int j, Layer a, int from, int to, double lo, double hi) {
+	final int m = t[j].getM(), last = to - from + 1;
+	final double g[] = good[j], b[] = bad[j], r[] = ratio[j];
+
+	// The chain formed by RELEASE, the piece, and INSPECT
+	if (chainC.length <= last) {
+	    chainC = new double[2 * last];
+	    chainD = new double[2 * last];
+	    chainSlope = new double[2 * last];
+	}
+	chainC[0] = chainD[0] = 0;
+	System.arraycopy(a.c, from, chainC, 1, last - 1);
+	System.arraycopy(a.d, from, chainD, 1, last - 1);
+	chainC[last] = inspectCost;
+	chainD[last] = inspectD;
+	for(int k=0; k<last; k++) {
+	    chainSlope[k] = (chainD[k+1] - chainD[k]) / (chainC[k+1] - chainC[k]);
+	}
+
+	for(int i=0; i<m; i++) {
+	    if (Double.isNaN(r[i])) {
+		// the channel always gets RELEASE or INSPECT
+		ptr[i] = -1;
+		continue;
+	    }
+	    // the vertex optimal at the slope hi*r[i]
+	    int k = 0;
+	    while(k < last && chainSlope[k] > hi * r[i]) k++;
+	    ptr[i] = k;
+	}
+	while(true) {
+	    // the candidate for the current pointers
+	    double c = t[j].getCost(), d = 0;
+	    for(int i=0; i<m; i++) {
+		if (b[i] == 0) continue;
+		if (g[i] == 0) {
+		    d += b[i] * inspectD;
+		} else {
+		    c += g[i] * chainC[ptr[i]];
+		    d += b[i] * chainD[ptr[i]];
+		}
+	    }
+	    addCandidate(c, d, j, 0, m);
+	    // the channel whose next edge is the steepest one in U's terms
+	    int best = -1;
+	    double bestSlope = lo;
+	    for(int i=0; i<m; i++) {
+		if (ptr[i] < 0 || ptr[i] == last) continue;
+		double x = chainSlope[ptr[i]] / r[i];
+		if (x >= bestSlope) {
+		    best = i;
+		    bestSlope = x;
+		}
+	    }
+	    if (best < 0) break;
+	    ptr[best]++;
+	}
+    }
+
+    /** Adds a candidate to the scratch arrays, along with the current
+	channel pointers (made into vertex indexes) */
+    private void addCandidate(double c, double d, int j, long rank, int m) {
+	if (candSize == candC.length) {
+	    int len = 2 * candSize;
+	    candC = grow(candC, len);
+	    candD = grow(candD, len);
+	    candFirst = grow(candFirst, len);
+	    candChildOff = grow(candChildOff, len);
+	    long a[] = new long[len];
+	    System.arraycopy(candRank, 0, a, 0, candSize);
+	    candRank = a;
+	}
+	if (candChildSize + m > candChild.length) {
+	    candChild = grow(candChild, Math.max(candChildSize + m, 2 * candChild.length));
+	}
+	candC[candSize] = c;
+	candD[candSize] = d;
+	candFirst[candSize] = j;
+	candRank[candSize] = rank;
+	candChildOff[candSize] = candChildSize;
+	for(int i=0; i<m; i++) candChild[candChildSize++] = ptr[i] - 1;
+	candSize++;
+    }
+
+    /** Replaces the hull with the convex hull of its vertices and
+	the candidates from..candSize-1 (which are sorted by cost),
+	keeping only the vertices that are optimal somewhere in [lo,
+	hi]. Merging each sensor's candidates into the hull as soon as
+	they are found keeps the lists short; sorting all of them at
+	once took most of the time.
+	@param ctx The context whose vertex selection to use
+     */
+    private void addRun(int from, FrontierContext ctx, double lo, double hi) {
+	final int n = hullSize + candSize - from;
+	if (order.length < n) {
+	    int len = Math.max(n, 2 * order.length);
+	    order = new int[len];
+	    kept = new int[len];
+	    selC = new double[len];
+	    selD = new double[len];
+	}
+	// merge
+	int i = 0, j = from, k = 0;
+	while(i < hullSize && j < candSize) {
+	    order[k++] = (compare(j, hull[i]) < 0) ? j++ : hull[i++];
+	}
+	while(i < hullSize) order[k++] = hull[i++];
+	while(j < candSize) order[k++] = j++;
+	for(k=0; k<n; k++) {
+	    selC[k] = candC[order[k]];
+	    selD[k] = candD[order[k]];
+	}
+	int nkept = Frontier.selectNecessaryVertices(selC, selD, n, ctx, kept);
+	if (hull.length < nkept) hull = new int[order.length];
+	hullSize = 0;
+	for(k=trim(nkept, lo, hi); k<nkept; k++) {
+	    if (!inWindow(k, nkept, lo, hi)) break;
+	    hull[hullSize++] = order[kept[k]];
+	}
+    }
+
+    /** The order of {@link FrontierInfo.PSCostComparator}: by cost, and
+	then by detection rate */
+    private int compare(int i, int j) {
+	double x = candC[i] - candC[j];
+	return (x<0) ? -1 : (x>0) ? 1 : (int)Math.signum(candD[i] - candD[j]);
+    }
+
+    /** The slope of the edge leading to the k-th of the nkept
+	selected vertices (from RELEASE for k=0, and to INSPECT for
+	k=nkept) */
+    private double keptSlope(int k, int nkept) {
+	double c0 = (k == 0) ? 0 : selC[kept[k-1]], d0 = (k == 0) ? 0 : selD[kept[k-1]];
+	double c1 = (k == nkept) ? inspectCost : selC[kept[k]],
+	    d1 = (k == nkept) ? inspectD : selD[kept[k]];
+	return (d1 - d0) / (c1 - c0);
+    }
+
+    /** Is the k-th of the nkept selected vertices optimal anywhere in
+	[lo, hi]? It is optimal between the slopes of its two edges. */
+    private boolean inWindow(int k, int nkept, double lo, double hi) {
+	return keptSlope(k+1, nkept) <= hi && keptSlope(k, nkept) >= lo;
+    }
+
+    /** The first of the nkept selected vertices that is optimal
+	anywhere in [lo, hi] */
+    private int trim(int nkept, double lo, double hi) {
+	int k = 0;
+	while(k < nkept && keptSlope(k+1, nkept) > hi) k++;
+	return k;
+    }
+
+    /** Rebuilds the policy of the k-th vertex of the set u from the
+	records kept by the last sweep.
+	@param k The index of the vertex among those of u; -1 stands for
+	RELEASE, and the number of u's vertices for INSPECT
+     */
+    private PolicySignature rebuild(SensorSet u, int k) {
+	final int s = u.getSize();
+	Layer a = layers[s];
+	final int r = (int)lattice.rank(u);
+	if (k < 0) return Policy.RELEASE;
+	if (k == a.off[r+1] - a.off[r]) return context.INSPECT;
+	final int v = a.off[r] + k;
+	final Long key = ((long)s << 32) | v;
+	PolicySignature p = rebuilt.get(key);
+	if (p != null) return p;
+	final Test q = t[a.first[v]];
+	final int m = q.getM();
+	SensorSet rest = u.minusJ(a.first[v]);
+	PolicySignature outputs[] = new PolicySignature[m];
+	double c = q.getCost(), e = q.getCost(), d = 0;
+	for(int i=0; i<m; i++) {
+	    double b = q.getB(i), g = q.getG(i);
+	    if (b == 0) {
+		// no bad items here: don't inspect anything
+		outputs[i] = Policy.RELEASE;
+	    } else if (g == 0) {
+		// no good items: inspect everything
+		outputs[i] = context.INSPECT;
+	    } else {
+		outputs[i] = rebuild(rest, a.child[a.childOff[v] + i]);
+	    }
+	    c += g * outputs[i].c;
+	    e += b * outputs[i].e;
+	    d += b * outputs[i].d;
+	}
+	p = Options.signaturesOnly ? new PolicySignature(c, e, d) :
+	    new Policy(q, outputs, c, e, d);
+	rebuilt.put(key, p);
+	return p;
+    }
+
+    /** Rebuilds the policy of the k-th vertex of the top frontier */
+    private PolicySignature rebuildTop(int k) {
+	SensorSet u = lattice.firstSetOfSize(maxDepth);
+	for(long r=0; r<topRank[k]; r++) u.transformToNextSetOfSameSize();
+	return rebuild(u, topIdx[k]);
+    }
+
+    private static double value(PolicySignature p, double lambda) {
+	return p.d - lambda * p.c;
+    }
+
+    /** Finds the policy maximizing d - lambda*c, with a single sweep
+	for this slope. With a limited maxDepth, this is the best of
+	the policies for all sets of maxDepth sensors.
+	@param lambda A non-negative number
+     */
+    public PolicySignature bestPolicy(double lambda) throws DDException {
+	sweep(lambda, lambda);
+	PolicySignature best = (value(context.INSPECT, lambda) > 0) ? context.INSPECT : Policy.RELEASE;
+	int bestK = -1;
+	double bestValue = value(best, lambda);
+	for(int k=0; k<topSize; k++) {
+	    double v = topD[k] - lambda * topC[k];
+	    if (v > bestValue) {
+		bestValue = v;
+		bestK = k;
+	    }
+	}
+	return (bestK < 0) ? best : rebuildTop(bestK);
+    }
+
+    /** Finds the best (possibly mixed) policy whose cost does not
+	exceed the budget. The result is the same as that of {@link
+	FrontierInfo#detectionRateForBudget(double, boolean)} (with
+	mixing allowed) applied to the frontier.
+
+	<p>This takes a single sweep over all slopes, after which the
+	two vertices bracketing the budget are found on the top
+	frontier, and only their policies are rebuilt.
+     */
+    public DetectionRateForBudget detectionRateForBudget(double budget) throws DDException {
+	if (budget >= inspectCost) return new DetectionRateForBudget(context.INSPECT, null, context, 1);
+	if (budget <= 0) return new DetectionRateForBudget(Policy.RELEASE, null, context, 1);
+
+	sweep(0, Double.POSITIVE_INFINITY);
+	// the first vertex costing more than the budget (topSize
+	// standing for INSPECT)
+	int k = 0;
+	while(k < topSize && topC[k] <= budget) k++;
+	if (k > 0 && topC[k-1] == budget) {
+	    return new DetectionRateForBudget(rebuildTop(k-1), null, context, 1);
+	}
+	PolicySignature hi = (k == 0) ? Policy.RELEASE : rebuildTop(k-1),
+	    lo = (k == topSize) ? context.INSPECT : rebuildTop(k);
+	// mix: hi*w + lo*(1-w)
+	double w = (lo.c - budget) / (lo.c - hi.c);
+	DetectionRateForBudget r = new DetectionRateForBudget(hi, lo, context, w);
+	r.givenBudget = budget;
+	return r;
+    }
+
+    /** Traces the entire frontier, vertex by vertex. Starting with
+	RELEASE and INSPECT, we look for a vertex between each two
+	adjacent known vertices, by maximizing d - lambda*c with the
+	slope lambda of the line through them; if one is found above the
+	line, it is inserted between them, and both of the new intervals
+	are examined in the same way. Thus, a frontier of k vertices
+	takes 2k+1 queries, each one a sweep for a single slope (see
+	{@link #bestPolicy(double)}). Although a single-slope sweep keeps
+	fewer vertices than a sweep over all slopes, it is never cheap
+	enough for 2k+1 of them to beat a single one, so this is much
+	slower than {@link #detectionRateForBudget(double)} or the
+	frontier builds. See {@link
+	Frontier#buildFrontierParametric(Test[], FrontierContext, int)}.
+     */
+    public Frontier traceFrontier() throws DDException {
+	Vector<PolicySignature> v = new Vector<PolicySignature>();
+	v.addElement(Policy.RELEASE);
+	v.addElement(context.INSPECT);
+	int k = 0;
+	while(k < v.size()-1) {
+	    PolicySignature lo = v.elementAt(k), hi = v.elementAt(k+1);
+	    double lambda = (hi.d - lo.d) / (hi.c - lo.c);
+	    PolicySignature p = bestPolicy(lambda);
+	    if (value(p, lambda) > value(lo, lambda) + 1e-12 * Math.max(1, lambda) &&
+		p.c > lo.c && p.c < hi.c) {
+		v.insertElementAt(p, k+1);
+	    } else {
+		k++;
+	    }
+	}
+	// only the non-trivial policies are stored
+	v.removeElementAt(v.size()-1);
+	v.removeElementAt(0);
+	return new Frontier(v.toArray(new PolicySignature[0]), context);
+    }
+
+    /** How many sweeps over the lattice have been made so far */
+    public int getSweepCnt() {
+	return sweepCnt;
+    }
+
+    /** How many subsets have been processed so far, over all sweeps */
+    public long getSetCnt() {
+	return setCnt;
+    }
+
+    /** How many subset frontier vertices have been computed so far,
+	over all sweeps */
+    public long getVertexCnt() {
+	return vertexCnt;
+    }
+
+    private static double[] grow(double a[], int len) {
+	double b[] = new double[len];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+
+    private static int[] grow(int a[], int len) {
+	int b[] = new int[len];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+
+}
@@ -76,6 +76,15 @@ public class PolicySignature {
 
     // FIXME: should give error if pi!=0 and e=NaN
     public double getPolicyCost(double pi) {
+	return getPolicyCost(c, e, pi);
+    }
+
+    /** The cost at the given pi of a policy whose costs on good and
+	bad items are c and e, respectively. This is the same
+	computation as in {@link #getPolicyCost(double)}, for use in
+	code that keeps vertices in primitive arrays.
+     */
+    static double getPolicyCost(double c, double e, double pi) {
 	return (pi==0) ? c : c + pi*(e-c);
     }
 
@@ -111,6 +120,18 @@ public class PolicySignature {
 	}
     }
 
+    /** The same as {@link #compareToRay(PolicySignature,
+	PolicySignature, double)}, for a point t and a ray [x,y) given by
+	their costs (already computed at the appropriate pi) and detection
+	rates.
+     */
+    static double compareToRay(double tc, double td, double xc, double xd,
+			       double yc, double yd) {
+	if (xc > yc) throw new AssertionError("(x.c="+xc+") > (y.c="+yc+")");
+	if (xc > tc) throw new AssertionError("(x.c="+xc+") > (this.c="+tc+")");
+	return (td - xd) * (yc -xc) - (tc - xc) * (yd - xd);
+    }
+
     static private NumberFormat fmt = new DecimalFormat("0.######");
     
     /** Just print cost and detection rate, with a few decimal digits */
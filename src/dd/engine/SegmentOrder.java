@@ -0,0 +1,133 @@
+package dd.engine;
+
+/** The ordering engine used in test fusion. When a frontier is
+    attached to each output channel of a test q, the segments of the
+    compound device's efficient frontier are obtained by taking the
+    segments of all the attached frontiers in the order of decreasing
+    slope (as seen via q's channels). Within each channel, the slopes
+    are already in the decreasing order, since the attached frontier
+    is convex; thus, the ordering is a k-way merge of m sorted
+    sequences, which we carry out with a heap holding the next
+    segment of each channel. This takes O(mv log m) time for mv
+    segments in total, rather than O(mv m) for a linear scan over the
+    channels at each step.
+
+    <p>An instance of this class keeps its arrays between calls, and
+    only reallocates them when a larger problem comes along.
+ */
+final class SegmentOrder {
+    /** {iOrdered[k]=i, jOrdered[k]=j} means: the k-th segment of the
+	compound-device efficient frontier uses the j-th segment of the
+	EF of the device attached to the i-th channel of the front-end
+	device q. Both i and j are 0-based. */
+    int iOrdered[] = new int[0];
+    int jOrdered[] = new int[0];
+    /** skippable[k]=true means that the vertex at the end of the k-th
+	segment sits on a straight line between its neighbors, and does not
+	need to be used in the hull construction */
+    boolean skippable[] = new boolean[0];
+    /** The number of segments ordered by the last call */
+    int mv = 0;
+
+    /** used[i] = the number of segments of channel i already placed */
+    private int used[] = new int[0];
+    private IndexHeap heap = new IndexHeap(0);
+
+    /** used to skip some vertices that sit on virtually straight-line
+	sections of the frontier */
+    static final double ratioEps = 1e-14;
+
+    /** Makes sure the arrays can hold mv segments on m channels */
+    private void ensureCapacity(int m, int _mv) {
+	if (iOrdered.length < _mv) {
+	    iOrdered = new int[_mv];
+	    jOrdered = new int[_mv];
+	    skippable = new boolean[_mv];
+	}
+	if (used.length < m) used = new int[m];
+	heap.ensureCapacity(m);
+    }
+
+    /** The slope of segment j on channel i, or its inverse */
+    private static double ratio(double h[], double r[][], int i, int j) {
+	return (h==null) ? r[i][j] : h[i]*r[i][j];
+    }
+
+    /** Orders the segments of all channels in the order of decreasing
+	ratio(i,j) = h[i]*r[i][j], and marks the "skippable" ones.
+
+	@param m The number of channels
+	@param segCount segCount[i] is the number of segments on the i-th
+	channel
+	@param h Per-channel multipliers for the slopes; may be null, which
+	means that r already contains the complete slopes
+	@param invh The inverses of h (or null, if h is null)
+	@param r r[i][j] is the slope of the j-th segment on the i-th channel
+	(before multiplication by h[i])
+	@param invr The inverses of r. On vertical or horizontal segments,
+	either r or invr is infinite, but at least the other one is a
+	regular number.
+     */
+    void order(int m, int segCount[], double h[], double invh[],
+	       double r[][], double invr[][]) {
+	int total = 0;
+	for(int i=0; i<m; i++) total += segCount[i];
+	ensureCapacity(m, total);
+	mv = total;
+
+	heap.clear();
+	for(int i=0; i<m; i++) {
+	    used[i] = 0;
+	    if (segCount[i] > 0) heap.add(i, key(ratio(h, r, i, 0)));
+	}
+
+	double lastRatio = 0, lastInvRatio=0;
+
+	for(int pos=0; pos< mv; pos++) {
+	    // the not-yet-"used" segment with the largest ratio; among
+	    // equal ones, the one on the lowest-numbered channel
+	    if (heap.isEmpty()) throw new AssertionError("max not found?!");
+	    int iFound = heap.peek();
+	    int jFound = used[iFound];
+	    double maxRatio = ratio(h, r, iFound, jFound);
+	    double invMaxRatio = ratio(invh, invr, iFound, jFound);
+
+	    // Was the current max (computationally) same as the
+	    // previous one?  We assume equality if either
+	    // |r1-r2|<eps, or |(1/r1)-(1/r2)|<eps, where eps=ratioEps
+	    // is a special very tight tolerance value
+
+	    boolean skipPrev = (pos > 0) &&
+		((lastRatio <= 0.5)?
+		 (Math.abs(maxRatio-lastRatio) <ratioEps) :
+		 (Math.abs( invMaxRatio - lastInvRatio) < ratioEps));
+
+	    if (skipPrev) {
+		skippable[pos-1] = true;
+	    } else {
+		lastRatio = maxRatio;
+		lastInvRatio = invMaxRatio;
+	    }
+
+	    // record pair (i, used[i])
+	    iOrdered[pos] = iFound;
+	    jOrdered[pos] = used[iFound]++;
+	    skippable[pos] = false;
+
+	    if (used[iFound] < segCount[iFound]) {
+		heap.replaceTopKey(key(ratio(h, r, iFound, used[iFound])));
+	    } else {
+		heap.poll();
+	    }
+	}
+    }
+
+    /** The heap key for a slope: the heap is a min-heap, and we want the
+	largest slope first. A NaN slope (which may only result from
+	degenerate, zero-length segments) is placed after everything else.
+    */
+    private static double key(double ratio) {
+	return Double.isNaN(ratio) ? Double.POSITIVE_INFINITY : -ratio;
+    }
+
+}
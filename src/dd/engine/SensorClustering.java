@@ -0,0 +1,247 @@
+package dd.engine;
+
+import java.util.*;
+
+/** Groups sensors with similar costs and ROC curves into clusters,
+    each of which can then be replaced by a single {@link Test} with
+    a combined multiplicity ({@link Test#getNCopies()}). Since the
+    size of the subset lattice grows with the product of (nCopies+1)
+    over all distinct sensors, folding k near-duplicates into one
+    sensor with k copies cuts the lattice by a factor of up to
+    2<sup>k</sup>/(k+1).
+
+    <p>Two sensors are considered similar if their costs differ by no
+    more than the fraction tol of the larger of them, and their ROC
+    curves are within tol of each other (see {@link #rocDistance(Test,
+    Test)}). The clusters are formed greedily, in the order of the
+    input array: each sensor joins the first cluster all of whose
+    members are similar to it, or starts a new cluster.
+
+    <p>Each cluster is represented by two sensors. The
+    <em>pessimistic</em> one has the largest of the members' costs,
+    and the lower envelope of their ROC curves (which is concave, as
+    each curve is); each member is at least as good as it. The
+    <em>optimistic</em> one has the smallest cost and the upper
+    concave hull of their ROC curves, and is at least as good as each
+    member. The frontier built from the pessimistic representatives
+    is achievable (a policy that uses k copies of a representative
+    can use k distinct members of the cluster instead, and do no
+    worse), while the one built from the optimistic ones lies above
+    the true frontier; thus the difference between the areas under
+    the two frontiers bounds the error introduced by the clustering
+    (up to the effects of vertex skipping).
+ */
+public class SensorClustering {
+
+    /** The original sensors */
+    private final Test t[];
+    /** The members of each cluster (indexes into t[]) */
+    private final Vector<Vector<Integer>> clusters = new Vector<Vector<Integer>>();
+    private final Test pessimistic[], optimistic[];
+
+    /** Clusters the sensors t[]. Sensors with no copies are left alone.
+	@param tol The tolerance for the relative difference in costs, and
+	for the distance between the ROC curves
+     */
+    public SensorClustering(Test _t[], double tol) {
+	t = _t;
+	for(int i=0; i<t.length; i++) {
+	    Vector<Integer> home = null;
+	    if (t[i].getNCopies() > 0) {
+		for(Vector<Integer> c: clusters) {
+		    boolean ok = t[c.elementAt(0)].getNCopies() > 0;
+		    for(int k=0; ok && k<c.size(); k++) ok = similar(t[c.elementAt(k)], t[i], tol);
+		    if (ok) {
+			home = c;
+			break;
+		    }
+		}
+	    }
+	    if (home == null) {
+		home = new Vector<Integer>();
+		clusters.addElement(home);
+	    }
+	    home.addElement(i);
+	}
+
+	pessimistic = new Test[clusters.size()];
+	optimistic = new Test[clusters.size()];
+	for(int j=0; j<clusters.size(); j++) {
+	    Vector<Integer> c = clusters.elementAt(j);
+	    if (c.size() == 1) {
+		pessimistic[j] = optimistic[j] = t[c.elementAt(0)];
+	    } else {
+		pessimistic[j] = representative(c, false);
+		optimistic[j] = representative(c, true);
+	    }
+	}
+    }
+
+    private static boolean similar(Test a, Test b, double tol) {
+	return Math.abs(a.getCost() - b.getCost()) <= tol * Math.max(a.getCost(), b.getCost()) &&
+	    rocDistance(a, b) <= tol;
+    }
+
+    /** The sensors to build the frontier from: one (pessimistic)
+	representative per cluster */
+    public Test[] getSensors() {
+	return pessimistic;
+    }
+
+    /** The optimistic representatives of the clusters; the frontier built
+	from them bounds the true frontier from above */
+    public Test[] getOptimisticSensors() {
+	return optimistic;
+    }
+
+    /** How many clusters have been formed */
+    public int getClusterCount() {
+	return clusters.size();
+    }
+
+    /** The x-coordinates (sumGood) of the ROC curve's vertices, from
+	(0,0) to (1,1) */
+    private static double[] xs(Test a) {
+	double x[] = new double[a.getM()+2];
+	for(int i=0; i<=a.getM(); i++) x[i+1] = a.sumGood(i);
+	return x;
+    }
+
+    /** The y-coordinates (sumBad) of the ROC curve's vertices */
+    private static double[] ys(Test a) {
+	double y[] = new double[a.getM()+2];
+	for(int i=0; i<=a.getM(); i++) y[i+1] = a.sumBad(i);
+	return y;
+    }
+
+    /** The value of the ROC curve (the detection rate, sumBad) at the
+	given false-alarm rate x (sumGood). Where the curve has a vertical
+	section, its top is returned.
+     */
+    static double rocValue(Test a, double x) {
+	double y = 0;
+	double px = 0, py = 0;
+	for(int i=0; i<=a.getM(); i++) {
+	    double qx = a.sumGood(i), qy = a.sumBad(i);
+	    if (px <= x && x <= qx) {
+		y = Math.max(y, (qx == px) ? qy : py + (qy-py) * (x-px)/(qx-px));
+	    }
+	    px = qx;
+	    py = qy;
+	}
+	return y;
+    }
+
+    /** The largest vertical distance between the ROC curves of the two
+	sensors. As both curves are piecewise linear, it is attained at
+	a vertex of one of them. */
+    public static double rocDistance(Test a, Test b) {
+	double d = 0;
+	for(double x: xs(a)) d = Math.max(d, Math.abs(rocValue(a,x) - rocValue(b,x)));
+	for(double x: xs(b)) d = Math.max(d, Math.abs(rocValue(a,x) - rocValue(b,x)));
+	return d;
+    }
+
+    /** Creates the representative of a cluster.
+	@param upper If true, the optimistic one (lowest cost, upper
+	concave hull of the ROC curves); otherwise, the pessimistic one
+	(highest cost, lower envelope of the ROC curves)
+     */
+    private Test representative(Vector<Integer> c, boolean upper) {
+	double cost = t[c.elementAt(0)].getCost();
+	int nCopies = 0;
+	String name = "";
+	TreeSet<Double> xset = new TreeSet<Double>();
+	for(int i: c) {
+	    Test a = t[i];
+	    cost = upper ? Math.min(cost, a.getCost()) : Math.max(cost, a.getCost());
+	    nCopies += a.getNCopies();
+	    name += (name.length()==0 ? "" : "/") + a.getName();
+	    for(double x: xs(a)) xset.add(x);
+	}
+
+	Vector<double[]> p = new Vector<double[]>();
+	if (upper) {
+	    // all vertices of all curves; their hull is computed below
+	    for(int i: c) {
+		double x[] = xs(t[i]), y[] = ys(t[i]);
+		for(int k=0; k<x.length; k++) p.addElement(new double[] {x[k], y[k]});
+	    }
+	} else {
+	    // the lower envelope has its vertices at the curves'
+	    // vertices, and where two curves cross
+	    double x[] = new double[xset.size()];
+	    int n = 0;
+	    for(double q: xset) x[n++] = q;
+	    for(int k=0; k<n; k++) {
+		if (k > 0) {
+		    for(int i: c) {
+			for(int j: c) {
+			    if (j <= i) continue;
+			    double d0 = rocValue(t[i], x[k-1]) - rocValue(t[j], x[k-1]),
+				d1 = rocValue(t[i], x[k]) - rocValue(t[j], x[k]);
+			    if (d0 * d1 < 0) {
+				double xc = x[k-1] + (x[k]-x[k-1]) * d0/(d0-d1);
+				p.addElement(new double[] {xc, lowerValue(c, xc)});
+			    }
+			}
+		    }
+		}
+		p.addElement(new double[] {x[k], lowerValue(c, x[k])});
+	    }
+	}
+	double h[][] = upperHull(p);
+
+	// skip (0,0)
+	int m = h.length - 1;
+	double sumBad[] = new double[m], sumGood[] = new double[m];
+	for(int k=0; k<m; k++) {
+	    sumGood[k] = h[k+1][0];
+	    sumBad[k] = h[k+1][1];
+	}
+	return new Test(name, nCopies, cost, sumBad, sumGood, m);
+    }
+
+    private double lowerValue(Vector<Integer> c, double x) {
+	double y = 1;
+	for(int i: c) y = Math.min(y, rocValue(t[i], x));
+	return y;
+    }
+
+    /** The upper concave hull of the points (x,y), from (0,0) to (1,1),
+	without collinear vertices */
+    private static double[][] upperHull(Vector<double[]> p) {
+	double a[][] = p.toArray(new double[0][]);
+	Arrays.sort(a, new Comparator<double[]>() {
+		public int compare(double[] u, double[] v) {
+		    return (u[0] != v[0]) ? Double.compare(u[0], v[0]) : Double.compare(u[1], v[1]);
+		}
+	    });
+	Vector<double[]> h = new Vector<double[]>();
+	h.addElement(new double[] {0, 0});
+	for(double q[]: a) {
+	    if (q[0] == 0 && q[1] == 0) continue;
+	    while(h.size() >= 2) {
+		double u[] = h.elementAt(h.size()-2), v[] = h.elementAt(h.size()-1);
+		// drop v unless it is strictly above the line from u to q
+		double cross = (v[0]-u[0])*(q[1]-u[1]) - (v[1]-u[1])*(q[0]-u[0]);
+		if (cross >= 0) h.removeElementAt(h.size()-1);
+		else break;
+	    }
+	    h.addElement(q);
+	}
+	return h.toArray(new double[0][]);
+    }
+
+    /** Describes the clusters */
+    public String toString() {
+	String s = "" + t.length + " sensors folded into " + clusters.size() + " clusters:";
+	for(int j=0; j<clusters.size(); j++) {
+	    if (clusters.elementAt(j).size() > 1) {
+		s += "\n  " + pessimistic[j].getName() + ": " + pessimistic[j].getNCopies() + " copies, cost " + optimistic[j].getCost() + " to " + pessimistic[j].getCost();
+	    }
+	}
+	return s;
+    }
+
+}
@@ -0,0 +1,177 @@
+package dd.engine;
+
+import java.util.*;
+
+/** A SensorLattice describes the set of all sub(multi)sets of a
+    given set of sensors, i.e. all {@link SensorSet}s that can be
+    formed from the array of tests passed to the frontier finder,
+    taking into account the multiplicity of each test. It provides
+    the index arithmetic that maps subsets to integers and back, and
+    the enumeration of subsets of the same size.
+
+    <p>Each frontier computation owns its own SensorLattice instance;
+    thus, several computations can run in the same JVM (e.g., in
+    several sessions of the web application) without interfering with
+    each other.
+ */
+class SensorLattice {
+    /** maxCnt[i] is the number of copies of the i-th test available */
+    final int maxCnt[];
+
+    /** prefixCnt[i][s] is the number of distinct multisets of size s
+	that can be formed from tests 0 through i-1 (saturated at
+	Long.MAX_VALUE). This is used to rank the sets within a layer. */
+    private final long prefixCnt[][];
+
+    /** Creates the lattice of subsets that can be formed from up to
+	_maxCnt[i] copies of each i-th test. The array is not copied, and
+	should not be modified thereafter.
+     */
+    SensorLattice( int _maxCnt[]) {
+	maxCnt = _maxCnt;
+	final int n = maxCnt.length, m = maxSetSize();
+	prefixCnt = new long[n+1][m+1];
+	prefixCnt[0][0] = 1;
+	for(int i=0; i<n; i++) {
+	    for(int s=0; s<=m; s++) {
+		long sum = 0;
+		for(int v=0; v<=maxCnt[i] && v<=s; v++) {
+		    sum += prefixCnt[i][s-v];
+		    if (sum < 0) { // overflow
+			sum = Long.MAX_VALUE;
+			break;
+		    }
+		}
+		prefixCnt[i+1][s] = sum;
+	    }
+	}
+    }
+
+    /** Creates the lattice of subsets that can be formed from the
+	given tests, each one taken with its multiplicity {@link
+	Test#getNCopies()} */
+    SensorLattice( Test t[]) {
+	this(countCopies(t));
+    }
+
+    private static int[] countCopies(Test t[]) {
+	int maxCnt[]  = new int[t.length];
+	for(int i=0; i<t.length; i++) maxCnt[i] = t[i].nCopies;
+	return maxCnt;
+    }
+
+    /** How many distinct tests (not counting multiplicity) are there? */
+    int getN() {
+	return maxCnt.length;
+    }
+
+    /** How many distinct policies can be formed with so many tests of
+     * each kind? This is only meaningful for lattices small enough
+     * to be indexed with {@link SensorSet#intValue()}; the frontier
+     * builds don't need it, as they index sets by {@link
+     * #rank(SensorSet)}.
+     */
+    int getMaxPolicyCnt() throws DDException {
+	int pow = 1;
+	for(int i=0; i<maxCnt.length; i++) {
+	    if ((maxCnt[i]+1) >=  Integer.MAX_VALUE / pow) {
+		throw new DDException("Too many sesnsors to combine. It appears we may end up with close to, or over, " + Integer.MAX_VALUE + " distinct policies");
+	    }
+	    pow *= (maxCnt[i]+1);
+	}
+	return pow;
+    }
+
+    /** The size of the largest set in the lattice, i.e. the total
+	number of sensors, with multiplicity */
+    int maxSetSize() {
+	int sum = 0;
+	for(int c: maxCnt) sum += c;
+	return sum;
+    }
+
+    /** The number of distinct sets of size s (i.e., the number of sets in
+	the s-th layer of the lattice). If the number does not fit into
+	a long, Long.MAX_VALUE is returned.
+     */
+    long layerSize(int s) {
+	if (s < 0 || s >= prefixCnt[0].length) return 0;
+	return prefixCnt[maxCnt.length][s];
+    }
+
+    /** The number of distinct non-empty sets of size up to maxSize,
+	i.e. the number of frontiers a build of depth maxSize
+	computes. If the number does not fit into a long, Long.MAX_VALUE
+	is returned.
+     */
+    long countSets(int maxSize) {
+	long sum = 0;
+	for(int s=1; s<=maxSize; s++) {
+	    sum += layerSize(s);
+	    if (sum < 0) return Long.MAX_VALUE;
+	}
+	return sum;
+    }
+
+    /** The position of the set x among all sets of the same size, in the
+	order in which {@link SensorSet#transformToNextSetOfSameSize()}
+	enumerates them, i.e. the order of increasing {@link
+	SensorSet#intValue()}. This can be used to index the frontiers
+	of a single layer with an array whose size is {@link
+	#layerSize(int)}.
+
+	<p>The sets of the same size that precede x are counted by
+	going from the most significant (last) test down: for each
+	value v smaller than x's count of the i-th test, there are as
+	many such sets as there are ways to form the rest of the set
+	out of the tests 0 thru i-1.
+     */
+    long rank(SensorSet x) {
+	int rem = x.getSize();
+	long r = 0;
+	for(int i=maxCnt.length-1; i>=0; i--) {
+	    for(int v=0; v<x.cnt[i]; v++) {
+		r += prefixCnt[i][rem - v];
+	    }
+	    rem -= x.cnt[i];
+	}
+	return r;
+    }
+
+    /** A set with consisting of only one (k-th) sensor */
+    SensorSet oneSensorSet(int k) {
+	SensorSet x = new SensorSet(this);
+	x.cnt[k] = 1;
+	return x;
+    }
+
+    /** The first set of size n, in the order in which {@link
+	SensorSet#transformToNextSetOfSameSize()} enumerates them */
+    SensorSet firstSetOfSize(int n) {
+	SensorSet x = new SensorSet(this);
+	for(int i=0; i<maxCnt.length && n>0; i++) {
+	    x.cnt[i] = Math.min(maxCnt[i] , n);
+	    n -= x.cnt[i];
+	}
+	return x;
+    }
+
+    /** The set whose integer representation is ptr 
+	@see SensorSet#intValue()
+     */
+    SensorSet fromInt(int ptr) {
+	return new SensorSet(this, ptr);
+    }
+
+    /** Printable representation, with the 0th test on the right 
+     */
+    public String toString() {
+	StringBuffer x = new StringBuffer("maxCnt={");
+	for(int i=maxCnt.length-1; i>=0; i--) {
+	    x.append(" " + maxCnt[i]);
+	}	
+	x.append("}");
+	return x.toString();
+    }
+
+}
@@ -7,66 +7,39 @@ import java.util.*;
  * auxiliary class, probably of little use to an API user.
  */
 public class SensorSet {
-    static int maxCnt[];
+    /** The lattice of all sets to which this one belongs */
+    final SensorLattice lattice;
     /** Array representation */
     int cnt[];
 
-    static void init( int _maxCnt[]) {
-	maxCnt = _maxCnt;
-
-	StringBuffer x = new StringBuffer("maxCnt={");
-	for(int i=maxCnt.length-1; i>=0; i--) {
-	    x.append(" " + maxCnt[i]);
-	}	
-	x.append("}");
-	System.out.println(x.toString());
-
-    }
-
     SensorSet(SensorSet x) {
+	lattice = x.lattice;
 	//cnt = Arrays.copyOf(x.cnt, x.cnt.length); // n/a in older JDK
 	cnt = new int[x.cnt.length];
 	for(int i=0; i<cnt.length; i++) cnt[i] = x.cnt[i];
     }
 
-    /** How many distinct policies can be formed with so many tests of
-     * each kind?
-     */
-    static int getMaxPolicyCnt() throws DDException {
-	int pow = 1;
-	for(int i=0; i<maxCnt.length; i++) {
-	    if ((maxCnt[i]+1) >=  Integer.MAX_VALUE / pow) {
-		throw new DDException("Too many sesnsors to combine. It appears we may end up with close to, or over, " + Integer.MAX_VALUE + " distinct policies");
-	    }
-	    pow *= (maxCnt[i]+1);
-	}
-	return pow;
-    }
-
     public static int maxSetSize(Test[] tests) {
 	int sum = 0;
 	for(Test t: tests) sum += t.nCopies;
 	return sum;
     }
 
-    static int maxSetSize() {
-	int sum = 0;
-	for(int c: maxCnt) sum += c;
-	return sum;
-    }
-
     int getSize() {
 	int sum=0;
 	for(int c: cnt) sum+= c;
 	return sum;
     }
 
-    SensorSet() {
-	cnt = new int[maxCnt.length];
+    /** Creates an empty set */
+    SensorSet(SensorLattice _lattice) {
+	lattice = _lattice;
+	cnt = new int[lattice.maxCnt.length];
     }
 
-    SensorSet(int ptr) {
-	cnt = new int[maxCnt.length];
+    SensorSet(SensorLattice _lattice, int ptr) {
+	this(_lattice);
+	int maxCnt[] = lattice.maxCnt;
 	for(int i=0; ptr>0 && i<maxCnt.length; i++) {
 	    cnt[i] = (ptr % (maxCnt[i]+1));
 	    ptr /= (maxCnt[i]+1);
@@ -74,16 +47,11 @@ public class SensorSet {
 	if (ptr>0) throw new IllegalArgumentException("Cannot convert " + ptr+ " to a sensor set, as the value is out of range");
     }
 
-    /** A set with consisting of only one (k-th) sensor */
-    static SensorSet oneSensorSet(int k) {
-	SensorSet x = new SensorSet();
-	x.cnt[k] = 1;
-	return x;
-    }
-
-
-    /** Converts to integer representation */
+    /** Converts to integer representation. The result is only
+	meaningful if {@link SensorLattice#getMaxPolicyCnt()} succeeds
+	for the lattice. */
     int intValue() {
+	int maxCnt[] = lattice.maxCnt;
 	int pow = 1;
 	int sum = 0;
 	for(int i=0; i<maxCnt.length; i++) {
@@ -97,55 +65,45 @@ public class SensorSet {
      */
     public String toString() {
 	StringBuffer x = new StringBuffer("{");
-	for(int i=maxCnt.length-1; i>=0; i--) {
+	for(int i=cnt.length-1; i>=0; i--) {
 	    x.append(" " + cnt[i]);
 	}	
 	x.append("}");
 	return x.toString();
     }
 
-    static SensorSet firstSetOfSize(int n) {
-	SensorSet x = new SensorSet();
-	for(int i=0; i<maxCnt.length && n>0; i++) {
-	    x.cnt[i] = Math.min(maxCnt[i] , n);
-	    n -= x.cnt[i];
-	}
-	return x;
-    }
-
-    /** Modifies this set to be the next set in the lexicographic
-      sequence; returns increment/decrement in set size.
+    /** Modifies this set to be the next set of the same size, in the
+       lexicographic sequence, with the 0th test being the least
+       significant digit (i.e., in the order of increasing {@link
+       #intValue()}).
 
-      @return Integer.MAX_VALUE,  if this is the last set already
+       <p>Rather than stepping through all sets in that order until
+       one of the right size comes up (which, for a small layer of a
+       large lattice, would visit almost the entire lattice), this
+       goes to the next set directly: it finds the lowest test j that
+       still can be added, and that has some sensors below it; adds
+       one j-th sensor, and puts the rest of the lower sensors, less
+       one, back into the lowest positions, as {@link
+       SensorLattice#firstSetOfSize(int)} does.
 
-     */
-    private int toNext() {
-	int diff = 0;
-	for(int i=0; i<maxCnt.length; i++) {
-	    if (cnt[i] < maxCnt[i]) {
-		cnt[i]++;
-		diff ++;
-		return diff;
-	    } else {
-		diff -= cnt[i];
-		cnt[i] = 0;
-	    }
-	}
-	// there was no "next" ...
-	return Integer.MAX_VALUE;
-    }
-
-    /* Modifies this set to be the next set of the same size
        @return True on success, or false if this is the last set
      */
     boolean transformToNextSetOfSameSize() {
-	int sizeDiff = 0;
-	do {
-	    int d = toNext();
-	    if (d == Integer.MAX_VALUE) return false;
-	    sizeDiff += d;
-	} while(sizeDiff != 0);
-	return true;
+	int maxCnt[] = lattice.maxCnt;
+	int below = 0;
+	for(int j=0; j<maxCnt.length; j++) {
+	    if (below > 0 && cnt[j] < maxCnt[j]) {
+		cnt[j]++;
+		below--;
+		for(int i=0; i<j; i++) {
+		    cnt[i] = Math.min(maxCnt[i], below);
+		    below -= cnt[i];
+		}
+		return true;
+	    }
+	    below += cnt[j];
+	}
+	return false;
     }
 
     /** Returns a new sensor with out the j-th sensor (or with one
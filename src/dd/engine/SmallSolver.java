@@ -0,0 +1,142 @@
+package dd.engine;
+
+/** A frontier builder for small sensor sets (up to about 8 sensors,
+    counting the copies), meant to be called many times in a row,
+    e.g. in Monte Carlo or sensitivity studies, or for scoring many
+    small scenarios. It computes the same frontier as {@link
+    Frontier#buildFrontier(Test[], FrontierContext, int, Vector)}
+    with signaturesOnly=true, but without the overhead that only
+    matters for large lattices: there is no output, no timing, no
+    frontier store, no thread pool, and no garbage collection
+    request. The frontiers of all subsets are simply kept in an array
+    indexed by the set's {@link SensorSet#intValue() integer value},
+    and, since a set's value is larger than those of its subsets, the
+    sets are processed in the order of increasing value. The index
+    and scratch arrays are kept between calls, and only rebuilt when
+    the sensors' multiplicities change; the fusion itself uses the
+    thread's {@link FusionWorkspace}.
+
+    <p>Only the signatures of the policies are computed. A solver
+    should only be used by one thread at a time.
+ */
+public class SmallSolver {
+
+    /** The largest number of sensors (counting the copies) allowed */
+    public static final int MAX_SENSORS = 10;
+
+    private final FrontierContext context;
+
+    /** The multiplicities for which the index has been built */
+    private int maxCnt[] = new int[0];
+    /** Adding a copy of the i-th sensor to a set increases its value by
+	radix[i] */
+    private int radix[];
+    /** size[x] is the size of the set whose value is x */
+    private int size[];
+    /** The frontiers of the sets, by value */
+    private FrontierInfo frontiers[];
+    /** inputs[k] is an array of k frontiers to be combined */
+    private FrontierInfo inputs[][];
+    /** The current set's counts */
+    private int cnt[];
+
+    public SmallSolver(FrontierContext _context) {
+	if (_context.multiPi || _context.pi != 0) throw new IllegalArgumentException("Wrong method for this context!");
+	context = _context;
+    }
+
+    /** Builds the frontier of all policies that use the sensors t[] */
+    public FrontierInfo solve(Test t[]) {
+	return solve(t, -1);
+    }
+
+    /** Builds the frontier of all policies that use up to maxDepth of
+	the sensors t[] (all of them, if maxDepth is negative) */
+    public FrontierInfo solve(Test t[], int maxDepth) {
+	index(t);
+	final int n = t.length, count = frontiers.length;
+	final int total = size[count-1];
+	if (maxDepth < 0 || maxDepth > total) maxDepth = total;
+	if (maxDepth == 0) return new Frontier(context);
+
+	for(int i=0; i<n; i++) cnt[i] = 0;
+	int layerCnt = 0;
+	for(int x=1; x<count; x++) {
+	    // the next set, in the mixed-radix order
+	    for(int i=0; ; i++) {
+		if (cnt[i] < maxCnt[i]) {
+		    cnt[i]++;
+		    break;
+		}
+		cnt[i] = 0;
+	    }
+	    final int s = size[x];
+	    if (s > maxDepth) continue;
+	    if (s == maxDepth) layerCnt++;
+	    if (s == 1) {
+		int i = 0;
+		while(cnt[i] == 0) i++;
+		frontiers[x] = new Frontier(t[i], context);
+		continue;
+	    }
+	    // as in Frontier.buildSubsetFrontier()
+	    int k = 0;
+	    for(int j=0; j<n; j++) {
+		if (cnt[j] > 0) k++;
+	    }
+	    FrontierInfo in[] = inputs[k];
+	    k = 0;
+	    for(int j=0; j<n; j++) {
+		if (cnt[j] > 0) in[k++] = frontiers[x - radix[j]].testFusion(t[j], false);
+	    }
+	    frontiers[x] = ColumnFrontier.combine(in, context);
+	    for(int j=0; j<k; j++) in[j] = null;
+	}
+	if (maxDepth == total) return frontiers[count-1];
+
+	// the hull of the layer, in the order of the sets' rank
+	FrontierInfo layer[] = new FrontierInfo[layerCnt];
+	int k = 0;
+	for(int x=1; x<count; x++) {
+	    if (size[x] == maxDepth) layer[k++] = frontiers[x];
+	}
+	return ColumnFrontier.combine(layer, context);
+    }
+
+    /** Builds the index for the multiplicities of the sensors t[],
+	unless it has already been done */
+    private void index(Test t[]) {
+	final int n = t.length;
+	boolean same = (n == maxCnt.length);
+	for(int i=0; same && i<n; i++) same = (t[i].getNCopies() == maxCnt[i]);
+	if (same) return;
+
+	int total = 0;
+	for(Test q: t) {
+	    if (q.getNCopies() < 0) throw new IllegalArgumentException("Negative number of copies of sensor " + q.getName());
+	    total += q.getNCopies();
+	}
+	if (total > MAX_SENSORS) throw new IllegalArgumentException("SmallSolver can only handle up to " + MAX_SENSORS + " sensors, not " + total);
+
+	maxCnt = new int[n];
+	radix = new int[n];
+	cnt = new int[n];
+	int count = 1;
+	for(int i=0; i<n; i++) {
+	    maxCnt[i] = t[i].getNCopies();
+	    radix[i] = count;
+	    count *= maxCnt[i]+1;
+	}
+	size = new int[count];
+	for(int x=1; x<count; x++) {
+	    // remove the lowest-order copy
+	    int i = 0;
+	    while((x / radix[i]) % (maxCnt[i]+1) == 0) i++;
+	    size[x] = size[x - radix[i]] + 1;
+	}
+	frontiers = new FrontierInfo[count];
+	inputs = new FrontierInfo[n+1][];
+	for(int k=0; k<=n; k++) inputs[k] = new FrontierInfo[k];
+    }
+
+}
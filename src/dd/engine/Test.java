@@ -186,7 +186,9 @@ public class Test implements Cloneable {
 	@return The simplified test
      */
     public Test approximate(VSMethod vs, double eps) {
-	if (vs== VSMethod.VM1) {
+	// The vertex cap applies to frontiers, not to sensors; here, CAP
+	// is the same as VM1
+	if (vs== VSMethod.VM1 || vs== VSMethod.CAP) {
 	    int m = sumBad.length;
 	    double[] aBad = new double[m],
 		aGood = new double[m];
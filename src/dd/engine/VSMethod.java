@@ -37,4 +37,15 @@ public enum VSMethod {
   return i(s) := i-1;
   </pre>
 	 */
-	EB1 };
+	EB1,
+	/** A hard cap on the size of each frontier: after the VM1-style
+	skipping (which is still done with eps), a frontier that has more
+	than K vertices (K being {@link FrontierContext#vertexCap}) is
+	replaced by the K-vertex subset of its vertices that loses the
+	least area (see {@link Frontier#approximateCap(double[],
+	double[], int[], int, FrontierContext, FusionWorkspace)}). This
+	bounds the cost of each fusion, no matter how large the lattice
+	is. The error this introduces is bounded, and reported in {@link
+	AnnotatedFrontier#getCapError()}.
+	 */
+	CAP };
@@ -432,10 +432,42 @@ public class DDGUI extends MyJFrame {
 	}
 
 
+	/** Estimates the cost of the build, if a budget has been set,
+	    and asks the user whether to go ahead if it exceeds it.
+	    @return false if the user has decided not to
+	*/
+	private boolean checkBudget(Test[] actualSensors) {
+	    int maxDepth = Options.getMaxDepth(SensorSet.maxSetSize(actualSensors));
+	    if (!Options.getPlanRequested() || Planner.isSmall(actualSensors, maxDepth)) return true;
+	    setLabel("Estimating the cost of the build...");
+	    int piCnt = Options.piListIsTrivial() ? 1 : Options.getPiList().length;
+	    Planner plan = new Planner(actualSensors, Options.getZeroPiContext(), maxDepth, piCnt);
+	    System.out.println(plan);
+	    final String warning = plan.checkBudget(sensors, Options.getMemoryBudget(), 1000 * Options.getTimeBudgetSec());
+	    if (warning == null) return true;
+	    System.out.println(warning);
+	    // the dialog belongs in the event dispatch thread
+	    final int ans[] = {JOptionPane.NO_OPTION};
+	    try {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+			    ans[0] = JOptionPane.showConfirmDialog(DDGUI.this, warning + " Compute the frontier anyway?", "Frontier build may not fit", JOptionPane.YES_NO_OPTION);
+			}
+		    });
+	    } catch(Exception ex) {
+		return false;
+	    }
+	    return ans[0] == JOptionPane.YES_OPTION;
+	}
+
 	public void run() {
 	    try {
 		NumberFormat secFmt = new DecimalFormat("#.000");
 		Test[] actualSensors =  Main.approximateSensors(sensors);
+		if (!checkBudget(actualSensors)) {
+		    setLabel("Frontier computation cancelled");
+		    return;
+		}
 
 		if (Options.piListIsTrivial()) {
 
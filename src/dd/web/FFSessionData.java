@@ -252,9 +252,21 @@ public class FFSessionData {
 
 
 	// stored copy
-	Test[] actualSensors = new Test[n];
-	for(int i=0; i<n; i++)  actualSensors[i] = sensors[i];
-	actualSensors =  Main.approximateSensors(actualSensors);
+	Test[] storedSensors = new Test[n];
+	for(int i=0; i<n; i++)  storedSensors[i] = sensors[i];
+	Test[] actualSensors =  Main.approximateSensors(storedSensors);
+
+	// Refuse the builds that would overload the server (if the server
+	// has been given a budget; small builds are not worth checking)
+	if (Options.getPlanRequested() && !Planner.isSmall(actualSensors, -1)) {
+	    Planner plan = new Planner(actualSensors, context, -1, 1);
+	    System.out.println(plan);
+	    String warning = plan.checkBudget(storedSensors, Options.getMemoryBudget(), 1000 * Options.getTimeBudgetSec());
+	    if (warning != null) {
+		throw new WebException(warning + " Please go back and reduce the number of sensors, or of their copies.");
+	    }
+	}
+
 	AnnotatedFrontier frontier =
 	    Frontier.buildFrontier(actualSensors, context, -1, null);
 